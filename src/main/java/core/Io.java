@@ -3,18 +3,30 @@ package core;
 import java.io.*;
 import java.math.BigInteger;
 import java.net.URI;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.*;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.util.Arrays.asList;
 
 public final class Io {
     private static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
 
+    private static final int MAPPED_REGION_SIZE = 1 << 26;
+    private static final int DECODED_CHUNK_SIZE = 1 << 16;
+
     private static <T> List<T> cons(T element, List<T> elements) {
         List<T> result = new LinkedList<>();
         result.add(element);
@@ -99,6 +111,138 @@ public final class Io {
         }
     }
 
+    private static final class LineEndingNormalization {
+        private final StringBuilder result;
+        private boolean pendingCarriageReturn;
+
+        LineEndingNormalization(StringBuilder result) {
+            this.result = result;
+        }
+
+        void append(char[] symbols, int from, int to) {
+            int start = from;
+            if (pendingCarriageReturn && start < to) {
+                pendingCarriageReturn = false;
+
+                if (symbols[start] == '\n') {
+                    start++;
+                }
+            }
+
+            for (int index = start; index < to; index++) {
+                if (symbols[index] != '\r') {
+                    continue;
+                }
+
+                result.append(symbols, start, index - start).append('\n');
+
+                if (index + 1 == to) {
+                    pendingCarriageReturn = true;
+                } else if (symbols[index + 1] == '\n') {
+                    index++;
+                }
+
+                start = index + 1;
+            }
+
+            result.append(symbols, start, to - start);
+        }
+
+        /**
+         * Drops the terminator of the last line, the same way BufferedReader.readLine() does
+         */
+        String complete() {
+            int length = result.length();
+            if (0 < length && result.charAt(length - 1) == '\n') {
+                result.setLength(length - 1);
+            }
+
+            return result.toString();
+        }
+    }
+
+    private static void decode(CharsetDecoder decoder, ByteBuffer input, CharBuffer output, boolean endOfInput,
+                               LineEndingNormalization normalization) throws CharacterCodingException {
+        while (true) {
+            CoderResult result = decoder.decode(input, output, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+
+            output.flip();
+            normalization.append(output.array(), output.position(), output.limit());
+            output.clear();
+
+            if (result.isUnderflow()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the file through memory mapped regions, decoding them in large chunks into a presized buffer.
+     * Line endings are normalized the same way as by slurp(Path)
+     */
+    public static String slurpMapped(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return "";
+            }
+
+            StringBuilder result = new StringBuilder((int) Math.min(size, Integer.MAX_VALUE - 8));
+            LineEndingNormalization normalization = new LineEndingNormalization(result);
+
+            CharsetDecoder decoder = DEFAULT_CHARSET.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            ByteBuffer input = ByteBuffer.allocate(DECODED_CHUNK_SIZE);
+            CharBuffer output = CharBuffer.allocate(DECODED_CHUNK_SIZE);
+
+            for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(size - position, MAPPED_REGION_SIZE));
+
+                // Decoders only take the fast path for heap buffers, so the region is fed through in bulk copies
+                while (region.hasRemaining()) {
+                    ByteBuffer slice = region.slice();
+                    slice.limit(Math.min(slice.limit(), input.remaining()));
+
+                    input.put(slice);
+                    region.position(region.position() + slice.limit());
+
+                    input.flip();
+                    decode(decoder, input, output, false, normalization);
+                    input.compact();
+                }
+            }
+
+            input.flip();
+            decode(decoder, input, output, true, normalization);
+
+            CoderResult flushed = decoder.flush(output);
+            if (flushed.isError()) {
+                flushed.throwException();
+            }
+
+            output.flip();
+            normalization.append(output.array(), output.position(), output.limit());
+
+            return normalization.complete();
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    private static String process(String line, Iterable<LineProcessing> processing) {
+        String result = line;
+        for (LineProcessing next : processing) {
+            result = next.$(result);
+        }
+
+        return result;
+    }
+
     public static String slurp(Reader reader, Iterable<LineProcessing> processing) {
         try (BufferedReader bufferedReader = ensureBuffered(reader)) {
             StringBuilder result = new StringBuilder();
@@ -106,9 +250,7 @@ public final class Io {
             String line;
             String lineSeparator = "";
             while ((line = bufferedReader.readLine()) != null) {
-                for (LineProcessing next : processing) {
-                    line = next.$(line);
-                }
+                line = process(line, processing);
 
                 if (line.trim().isEmpty()) {
                     continue;
@@ -145,6 +287,322 @@ public final class Io {
     }
 
 
+    private static long nextLineBoundary(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        long current = position;
+        while (current < size) {
+            buffer.clear();
+            int read = channel.read(buffer, current);
+            if (read <= 0) {
+                break;
+            }
+
+            for (int index = 0; index < read; index++) {
+                if (buffer.get(index) == '\n') {
+                    return current + index + 1;
+                }
+            }
+
+            current += read;
+        }
+
+        return size;
+    }
+
+    /**
+     * Splits the file into byte ranges that start right after a line feed, which never occurs inside
+     * a multi-byte UTF-8 sequence
+     */
+    private static long[] splitAtLineBoundaries(FileChannel channel, long size, int chunks) throws IOException {
+        List<Long> result = new ArrayList<>();
+        result.add(0L);
+
+        long previous = 0;
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            long boundary = nextLineBoundary(channel, Math.max(previous, size / chunks * chunk), size);
+            if (boundary <= previous || size <= boundary) {
+                continue;
+            }
+
+            result.add(boundary);
+            previous = boundary;
+        }
+
+        result.add(size);
+
+        long[] boundaries = new long[result.size()];
+        for (int index = 0; index < boundaries.length; index++) {
+            boundaries[index] = result.get(index);
+        }
+
+        return boundaries;
+    }
+
+    /**
+     * Reads [from, to) of the channel with positional reads, so that several streams can share one channel
+     */
+    private static final class ChannelRangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long to;
+
+        private long position;
+
+        ChannelRangeInputStream(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.position = from;
+            this.to = to;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] result = new byte[1];
+            return read(result, 0, 1) == -1 ? -1 : result[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (to <= position) {
+                return -1;
+            }
+
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, to - position)), position);
+            if (read == -1) {
+                return -1;
+            }
+
+            position += read;
+            return read;
+        }
+    }
+
+    private static final class LineProcessingTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] boundaries;
+        private final Iterable<LineProcessing> processing;
+        private final String[] results;
+
+        private final int from;
+        private final int to;
+
+        LineProcessingTask(FileChannel channel, long[] boundaries, Iterable<LineProcessing> processing,
+                           String[] results, int from, int to) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.processing = processing;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        private String processChunk(int chunkIndex) {
+            InputStream chunk = new ChannelRangeInputStream(channel,
+                    boundaries[chunkIndex], boundaries[chunkIndex + 1]);
+
+            return slurp(new InputStreamReader(chunk, DEFAULT_CHARSET.newDecoder()), processing);
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = processChunk(from);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new LineProcessingTask(channel, boundaries, processing, results, from, middle),
+                    new LineProcessingTask(channel, boundaries, processing, results, middle, to));
+        }
+    }
+
+    /**
+     * Same as slurp(Path, Iterable), but the file is split at line boundaries and the chunks are processed
+     * on a fork/join pool of the given parallelism. Lines are reassembled in their original order
+     */
+    public static String slurpInParallel(Path path, int parallelism, Iterable<LineProcessing> processing) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("Invalid parallelism: %d", parallelism));
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return "";
+            }
+
+            int chunks = (int) Math.max(parallelism * 4L, (size + MAPPED_REGION_SIZE - 1) / MAPPED_REGION_SIZE);
+            long[] boundaries = splitAtLineBoundaries(channel, size, chunks);
+
+            String[] results = new String[boundaries.length - 1];
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new LineProcessingTask(channel, boundaries, processing, results, 0, results.length));
+            } finally {
+                pool.shutdown();
+            }
+
+            long length = 0;
+            for (String chunk : results) {
+                length += chunk.length() + 1;
+            }
+
+            StringBuilder result = new StringBuilder((int) Math.min(length, Integer.MAX_VALUE - 8));
+            String lineSeparator = "";
+            for (String chunk : results) {
+                if (chunk.isEmpty()) {
+                    continue;
+                }
+
+                result.append(lineSeparator).append(chunk);
+                lineSeparator = "\n";
+            }
+
+            return result.toString();
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    public static String slurpInParallel(Path path, Iterable<LineProcessing> processing) {
+        return slurpInParallel(path, Runtime.getRuntime().availableProcessors(), processing);
+    }
+
+    public static String slurpInParallel(Path path, LineProcessing processing, LineProcessing... rest) {
+        return slurpInParallel(path, cons(processing, asList(rest)));
+    }
+
+
+    /**
+     * Lazily read lines of the file. The file is opened per iterator and closed as soon as the iterator is exhausted;
+     * closing the iterable closes every iterator that has been abandoned before reaching the end
+     */
+    public static final class LineIterable implements Iterable<String>, Closeable {
+        private final Path path;
+        private final Iterable<LineProcessing> processing;
+
+        private final Set<BufferedReader> opened = Collections.newSetFromMap(
+                new IdentityHashMap<BufferedReader, Boolean>());
+
+        LineIterable(Path path, Iterable<LineProcessing> processing) {
+            this.path = path;
+            this.processing = processing;
+        }
+
+        private BufferedReader open() {
+            try {
+                BufferedReader result = Files.newBufferedReader(path, DEFAULT_CHARSET);
+                synchronized (opened) {
+                    opened.add(result);
+                }
+
+                return result;
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+        }
+
+        private void release(BufferedReader reader) {
+            synchronized (opened) {
+                opened.remove(reader);
+            }
+
+            try {
+                reader.close();
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private BufferedReader reader = open();
+
+                private String next;
+
+                private String consumeNextLine() {
+                    try {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            line = process(line, processing);
+
+                            if (!line.trim().isEmpty()) {
+                                return line;
+                            }
+                        }
+
+                        return null;
+                    } catch (IOException exception) {
+                        throw new RuntimeException(exception);
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    if (next == null && reader != null) {
+                        next = consumeNextLine();
+
+                        if (next == null) {
+                            release(reader);
+                            reader = null;
+                        }
+                    }
+
+                    return next != null;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    String result = next;
+                    next = null;
+
+                    return result;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            List<BufferedReader> abandoned;
+            synchronized (opened) {
+                abandoned = new ArrayList<>(opened);
+                opened.clear();
+            }
+
+            for (BufferedReader reader : abandoned) {
+                try {
+                    reader.close();
+                } catch (IOException ignore) {
+                    /*NOP*/
+                }
+            }
+        }
+    }
+
+    /**
+     * Processed lines are produced one at a time; lines that are blank after processing are skipped
+     * the same way as by slurp(Path, Iterable)
+     */
+    public static LineIterable lines(Path path, Iterable<LineProcessing> processing) {
+        return new LineIterable(path, processing);
+    }
+
+    public static LineIterable lines(Path path, LineProcessing... processing) {
+        return lines(path, asList(processing));
+    }
+
+
     public static <W extends Writer> W spit(W writer, String contents, Object... options) {
         try {
             writer.write(contents);
@@ -191,6 +649,280 @@ public final class Io {
     }
 
 
+    /**
+     * Long-lived line appender. Segments are encoded into a direct buffer that is written out when it fills up
+     * or once the flush interval has elapsed. In asynchronous mode segments are handed over to a writer thread
+     * through a bounded queue, so callers only block when the queue is full, and the writer thread flushes on time
+     * even when nothing is appended. The synchronous mode has no thread of its own: it checks the flush interval on
+     * append only, so the last segments stay buffered until the next append, flush or close.
+     * Once the writer thread has failed or died, appending, flushing and closing fail instead of blocking
+     */
+    public static final class Appender implements Closeable {
+        private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+        private static final String FLUSH = new String("flush");
+        private static final String CLOSE = new String("close");
+
+        private static final int BATCH_SIZE = 1024;
+        private static final long WRITER_CHECK_INTERVAL = 100;
+
+        private final Path path;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final CharsetEncoder encoder = DEFAULT_CHARSET.newEncoder();
+
+        private final long flushInterval;
+        private long lastFlushTime = System.nanoTime();
+
+        private final BlockingQueue<String> queue;
+        private final Thread writer;
+
+        private volatile IOException failure;
+        private volatile boolean stopped;
+        private boolean closed;
+
+        Appender(Path path, Object... options) {
+            this.path = path;
+
+            try {
+                this.channel = FileChannel.open(path,
+                        StandardOpenOption.CREATE,
+                        Maps.get(options, "append?", Boolean.class, "default", true) ?
+                                StandardOpenOption.APPEND :
+                                StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE);
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+
+            this.buffer = ByteBuffer.allocateDirect(Maps.get(options, "buffer-size", Integer.class, "default", 1 << 20));
+            this.flushInterval = TimeUnit.MILLISECONDS.toNanos(
+                    Maps.get(options, "flush-interval", Number.class, "default", 1000L).longValue());
+
+            if (Maps.get(options, "async?", Boolean.class, "default", false)) {
+                this.queue = new ArrayBlockingQueue<>(
+                        Maps.get(options, "queue-capacity", Integer.class, "default", 8192));
+                this.writer = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            drainQueue();
+                        } finally {
+                            stopped = true;
+                            if (!queue.isEmpty() && failure == null) {
+                                failure = new IOException(String.format("Writer thread for %s stopped with %d " +
+                                        "segments unwritten", Appender.this.path, queue.size()));
+                            }
+                        }
+                    }
+                }, String.format("appender: %s", path));
+                this.writer.setDaemon(true);
+                this.writer.start();
+            } else {
+                this.queue = null;
+                this.writer = null;
+            }
+        }
+
+        private void writeBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            buffer.clear();
+            lastFlushTime = System.nanoTime();
+        }
+
+        private void encode(CharBuffer chars) throws IOException {
+            encoder.reset();
+
+            CoderResult result;
+            while ((result = encoder.encode(chars, buffer, true)).isOverflow()) {
+                writeBuffer();
+            }
+
+            if (result.isError()) {
+                result.throwException();
+            }
+
+            while (encoder.flush(buffer).isOverflow()) {
+                writeBuffer();
+            }
+        }
+
+        private void write(String segment) throws IOException {
+            encode(CharBuffer.wrap(segment));
+            encode(CharBuffer.wrap(LINE_SEPARATOR));
+
+            if (flushInterval <= System.nanoTime() - lastFlushTime) {
+                writeBuffer();
+            }
+        }
+
+        private void drainQueue() {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            while (true) {
+                String next;
+                try {
+                    next = queue.poll(flushInterval, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException exception) {
+                    if (failure == null) {
+                        failure = new InterruptedIOException(String.format("Writer thread for %s was interrupted", path));
+                    }
+
+                    return;
+                }
+
+                batch.add(next == null ? FLUSH : next);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+
+                for (String segment : batch) {
+                    try {
+                        if (failure != null) {
+                            continue; // Keep draining, so that producers do not block forever
+                        }
+
+                        if (segment == FLUSH || segment == CLOSE) {
+                            writeBuffer();
+                        } else {
+                            write(segment);
+                        }
+                    } catch (IOException exception) {
+                        failure = exception;
+                    }
+
+                    if (segment == CLOSE) {
+                        return;
+                    }
+                }
+
+                batch.clear();
+            }
+        }
+
+        private void ensureHealthy() {
+            if (closed) {
+                throw new IllegalStateException(String.format("Appender for %s is closed", path));
+            }
+
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+
+            if (writer != null && !writer.isAlive()) {
+                throw new RuntimeException(new IOException(String.format("Writer thread for %s has died", path)));
+            }
+        }
+
+        /**
+         * Waits for room in the queue, but gives up once the writer thread has stopped; a segment that made it into
+         * the queue only as the writer stopped is never written, so that fails as well
+         */
+        private void enqueue(String segment) {
+            try {
+                boolean offered = false;
+                while (!stopped && !offered) {
+                    offered = queue.offer(segment, WRITER_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+
+                if (stopped) {
+                    throw new RuntimeException(failure != null ?
+                            failure :
+                            new IOException(String.format("Writer thread for %s has died", path)));
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(exception);
+            }
+        }
+
+        public synchronized Appender append(String segment) {
+            ensureHealthy();
+
+            if (queue != null) {
+                enqueue(segment);
+                return this;
+            }
+
+            try {
+                write(segment);
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+
+            return this;
+        }
+
+        public synchronized Appender append(Iterable<String> segments) {
+            for (String segment : segments) {
+                append(segment);
+            }
+
+            return this;
+        }
+
+        /**
+         * In asynchronous mode only requests the writer thread to flush
+         */
+        public synchronized Appender flush() {
+            ensureHealthy();
+
+            if (queue != null) {
+                enqueue(FLUSH);
+                return this;
+            }
+
+            try {
+                writeBuffer();
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+
+            return this;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            try {
+                if (queue != null) {
+                    enqueue(CLOSE);
+                    writer.join();
+                } else {
+                    writeBuffer();
+                }
+            } catch (IOException exception) {
+                failure = exception;
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException ignore) {
+                    /*NOP*/
+                }
+            }
+
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+        }
+    }
+
+    /**
+     * Options: <i>"append?"</i> (defaults to true), <i>"async?"</i>, <i>"buffer-size"</i>,
+     * <i>"flush-interval"</i> (ms, any Number), <i>"queue-capacity"</i>
+     */
+    public static Appender appender(Path path, Object... options) {
+        return new Appender(path, options);
+    }
+
+
     public static String filenameExtension(String filename) {
         if (Strings.isBlank(filename)) {
             return "";
@@ -215,6 +947,165 @@ public final class Io {
                 : path.getFileName().toString();
     }
 
+    /** Package-private, so that tests can cross chunk boundaries with small inputs. */
+    static long transferChunkSize = 1 << 26;
+
+    private static FileChannel openForWriting(Path path, boolean append) throws IOException {
+        return FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Moves [position, position + count) of the source without passing the bytes through the heap,
+     * letting the kernel use sendfile/copy_file_range where possible
+     */
+    private static long transferTo(FileChannel source, long position, long count, WritableByteChannel target)
+            throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long result = source.transferTo(position + transferred,
+                    Math.min(count - transferred, transferChunkSize), target);
+            if (result <= 0) {
+                break;
+            }
+
+            transferred += result;
+        }
+
+        return transferred;
+    }
+
+    private static long transferTo(FileChannel source, WritableByteChannel target) throws IOException {
+        return transferTo(source, 0, source.size(), target);
+    }
+
+    /**
+     * An appending channel reports the grown size as its position after every chunk, so the start is read once
+     * and the position advanced locally
+     */
+    private static long transferFrom(ReadableByteChannel source, FileChannel target, boolean append)
+            throws IOException {
+        long start = append ? target.size() : target.position();
+        long position = start;
+
+        long result;
+        while (0 < (result = target.transferFrom(source, position, transferChunkSize))) {
+            position += result;
+        }
+
+        target.position(position);
+
+        return position - start;
+    }
+
+    /**
+     * Opening the target truncates it before any source is read, so a target that is also a source is rejected
+     */
+    private static void ensureNotAmong(Path target, List<Path> sources) {
+        if (!Files.exists(target)) {
+            return;
+        }
+
+        try {
+            for (Path source : sources) {
+                if (Files.exists(source) && Files.isSameFile(source, target)) {
+                    throw new IllegalArgumentException(String.format("Target: %s is also a source", target));
+                }
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Options: <i>"append?"</i>
+     */
+    public static void copy(Path source, Path target, Object... options) {
+        concatAll(target, Collections.singletonList(source), options);
+    }
+
+    /**
+     * Named apart from concat(Path, Path, Path...), since a single Path is an Iterable&lt;Path&gt; of its name elements.
+     * <p>
+     * Options: <i>"append?"</i>
+     */
+    public static void concatAll(Path target, Iterable<Path> sources, Object... options) {
+        List<Path> paths = Iterables.toList(sources);
+        ensureNotAmong(target, paths);
+
+        try (FileChannel targetChannel = openForWriting(target,
+                Maps.get(options, "append?", Boolean.class, "default", false))) {
+            for (Path source : paths) {
+                try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+                    transferTo(sourceChannel, targetChannel);
+                }
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    public static void concat(Path target, Path source, Path... rest) {
+        concatAll(target, cons(source, asList(rest)));
+    }
+
+    /**
+     * Splits the file into parts of at most the given size, named after the file with the part index appended:
+     * <i>name.0</i>, <i>name.1</i>, ...
+     */
+    public static List<Path> split(Path source, long size, Path directory) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid part size: %d", size));
+        }
+
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            List<Path> result = new ArrayList<>();
+
+            long total = sourceChannel.size();
+            for (long position = 0; position < total || result.isEmpty(); position += size) {
+                Path part = directory.resolve(String.format("%s.%d", source.getFileName(), result.size()));
+                try (FileChannel partChannel = openForWriting(part, false)) {
+                    transferTo(sourceChannel, position, Math.min(size, total - position), partChannel);
+                }
+
+                result.add(part);
+            }
+
+            return result;
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    public static List<Path> split(Path source, long size) {
+        Path directory = source.toAbsolutePath().getParent();
+        return split(source, size, directory);
+    }
+
+    public static long transfer(Path source, OutputStream target) {
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            return transferTo(sourceChannel, Channels.newChannel(target));
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Options: <i>"append?"</i>
+     */
+    public static long transfer(InputStream source, Path target, Object... options) {
+        boolean append = Maps.get(options, "append?", Boolean.class, "default", false);
+
+        try (FileChannel targetChannel = openForWriting(target, append)) {
+            return transferFrom(Channels.newChannel(source), targetChannel, append);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+
     public static void deleteFile(Path path) {
         try {
             if (Files.isRegularFile(path)) {
@@ -259,48 +1150,221 @@ public final class Io {
         throw new RuntimeException(String.format("Path: %s does not denote a directory", path));
     }
 
+    /**
+     * Progress of a parallel deletion. Counters are updated while the deletion is running
+     */
+    public static final class Deletion {
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong directories = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+
+        private final Queue<IOException> errors = new ConcurrentLinkedQueue<>();
+
+        public long files() {
+            return files.get();
+        }
+
+        public long directories() {
+            return directories.get();
+        }
+
+        public long bytes() {
+            return bytes.get();
+        }
+
+        public List<IOException> errors() {
+            return new ArrayList<>(errors);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("files: %d, directories: %d, bytes: %d, errors: %d",
+                    files(), directories(), bytes(), errors.size());
+        }
+    }
+
+    private static final class DeletionTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final Deletion deletion;
+        private final boolean failFast;
+        private final AtomicBoolean cancelled;
+
+        DeletionTask(Path directory, Deletion deletion, boolean failFast, AtomicBoolean cancelled) {
+            this.directory = directory;
+            this.deletion = deletion;
+            this.failFast = failFast;
+            this.cancelled = cancelled;
+        }
+
+        private boolean failed(IOException exception) {
+            if (failFast) {
+                cancelled.set(true);
+                throw new RuntimeException(exception);
+            }
+
+            deletion.errors.add(exception);
+            return false;
+        }
+
+        /**
+         * @return true if the whole subtree has been removed
+         */
+        @Override
+        protected Boolean compute() {
+            boolean removed = true;
+
+            List<DeletionTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (cancelled.get()) {
+                        removed = false;
+                        break; // Still joins the subtasks forked so far
+                    }
+
+                    try {
+                        BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+
+                        if (attributes.isDirectory()) {
+                            DeletionTask subtask = new DeletionTask(entry, deletion, failFast, cancelled);
+                            subtask.fork();
+
+                            subtasks.add(subtask);
+                            continue;
+                        }
+
+                        Files.delete(entry);
+
+                        deletion.files.incrementAndGet();
+                        deletion.bytes.addAndGet(attributes.size());
+                    } catch (IOException exception) {
+                        removed = failed(exception);
+                    }
+                }
+            } catch (IOException exception) {
+                removed = failed(exception);
+            } catch (DirectoryIteratorException exception) {
+                removed = failed(exception.getCause());
+            }
+
+            for (DeletionTask subtask : subtasks) {
+                removed &= subtask.join();
+            }
+
+            if (!removed || cancelled.get()) {
+                return false;
+            }
+
+            try {
+                Files.delete(directory);
+                deletion.directories.incrementAndGet();
+
+                return true;
+            } catch (IOException exception) {
+                return failed(exception);
+            }
+        }
+    }
+
+    /**
+     * A failing fork/join task completes its caller while sibling tasks may still be running; waiting for the pool
+     * to terminate makes sure none of them touches the file system once the caller has seen the failure
+     */
+    private static void terminate(ForkJoinPool pool) {
+        pool.shutdownNow();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                /*NOP*/
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deletes sibling subtrees concurrently on a fork/join pool of bounded parallelism.
+     * With <i>"errors"</i> set to <i>"collect"</i> the deletion proceeds past failures, leaving the affected
+     * directories in place and recording the errors, instead of failing on the first one.
+     * <p>
+     * Options: <i>"parallelism"</i>, <i>"errors"</i> (<i>"fail-fast"</i> or <i>"collect"</i>),
+     * <i>"progress"</i> (Deletion to update)
+     */
+    public static Deletion deleteDirectoryInParallel(Path path, Object... options) {
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new RuntimeException(String.format("Path: %s does not denote a directory", path));
+        }
+
+        String errors = Maps.get(options, "errors", String.class, "default", "fail-fast");
+        if (!"fail-fast".equals(errors) && !"collect".equals(errors)) {
+            throw new IllegalArgumentException(String.format("Invalid error policy: %s", errors));
+        }
+
+        Deletion result = Maps.get(options, "progress", Deletion.class, "default", new Deletion());
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism(options));
+        try {
+            pool.invoke(new DeletionTask(path, result, "fail-fast".equals(errors), new AtomicBoolean()));
+        } finally {
+            terminate(pool);
+        }
+
+        return result;
+    }
+
 
     public static final class PathFiltering {
-        private static final Function<Path, String> TYPE = new Function<Path, String>() {
+        /**
+         * Path predicate that can also be tested against attributes that have already been read,
+         * e.g. while walking a directory tree, instead of querying the file system again
+         */
+        public interface AttributePredicate extends Predicate<Path> {
+            Boolean $(Path path, BasicFileAttributes attributes);
+        }
+
+        static boolean accepts(Predicate<Path> filter, Path path, BasicFileAttributes attributes) {
+            if (filter instanceof AttributePredicate) {
+                return ((AttributePredicate) filter).$(path, attributes);
+            }
+
+            return filter.$(path);
+        }
+
+
+        private static final AttributePredicate FILE_FILTER = new AttributePredicate() {
             @Override
-            public String $(Path x) {
-                if (Files.isRegularFile(x, LinkOption.NOFOLLOW_LINKS)) {
-                    return "file";
-                } else if (Files.isDirectory(x, LinkOption.NOFOLLOW_LINKS)) {
-                    return "directory";
-                }
+            public Boolean $(Path path, BasicFileAttributes attributes) {
+                return attributes.isRegularFile();
+            }
 
-                return "unknown";
+            @Override
+            public Boolean $(Path x) {
+                return Files.isRegularFile(x, LinkOption.NOFOLLOW_LINKS);
             }
         };
 
-        private static final Predicate<Path> FILE_FILTER = Filtering.by(
-                TYPE,
-                new Predicate<String>() {
-                    @Override
-                    public Boolean $(String x) {
-                        return "f".equals(x) || "file".equals(x);
-                    }
-                });
+        private static final AttributePredicate DIRECTORY_FILTER = new AttributePredicate() {
+            @Override
+            public Boolean $(Path path, BasicFileAttributes attributes) {
+                return attributes.isDirectory();
+            }
 
-        private static final Predicate<Path> DIRECTORY_FILTER = Filtering.by(
-                TYPE,
-                new Predicate<String>() {
-                    @Override
-                    public Boolean $(String x) {
-                        return "d".equals(x) || "directory".equals(x);
-                    }
-                });
+            @Override
+            public Boolean $(Path x) {
+                return Files.isDirectory(x, LinkOption.NOFOLLOW_LINKS);
+            }
+        };
 
-        public static Predicate<Path> files() {
+        public static AttributePredicate files() {
             return FILE_FILTER;
         }
 
-        public static Predicate<Path> directories() {
+        public static AttributePredicate directories() {
             return DIRECTORY_FILTER;
         }
 
-        public static Predicate<Path> byType(String type) {
+        public static AttributePredicate byType(String type) {
             if (type == null) {
                 throw new IllegalArgumentException("Type specifier should not be null");
             }
@@ -318,49 +1382,143 @@ public final class Io {
         }
 
 
-        public static Predicate<Path> byName(String glob) {
-            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(String.format("glob:%s", glob));
-            return new Predicate<Path>() {
-                @Override
-                public Boolean $(Path x) {
-                    return matcher.matches(x.getFileName());
-                }
-            };
+        /**
+         * Matches a path, or only its file name, with a matcher of the default file system that is created once.
+         * Nothing about the matched paths is retained
+         */
+        private static final class PatternPredicate implements AttributePredicate {
+            private final PathMatcher matcher;
+            private final boolean byName;
+
+            PatternPredicate(String syntaxAndPattern, boolean byName) {
+                this.matcher = FileSystems.getDefault().getPathMatcher(syntaxAndPattern);
+                this.byName = byName;
+            }
+
+            @Override
+            public Boolean $(Path path, BasicFileAttributes attributes) {
+                return $(path);
+            }
+
+            @Override
+            public Boolean $(Path x) {
+                Path matched = byName ? x.getFileName() : x;
+                return matched != null && matcher.matches(matched);
+            }
         }
 
+        public static AttributePredicate byName(String glob) {
+            return new PatternPredicate(String.format("glob:%s", glob), true);
+        }
 
-        public static Predicate<Path> byPath(String glob) {
-            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(String.format("glob:%s", glob));
-            return new Predicate<Path>() {
-                @Override
-                public Boolean $(Path x) {
-                    return matcher.matches(x);
-                }
-            };
+
+        public static AttributePredicate byPath(String glob) {
+            return new PatternPredicate(String.format("glob:%s", glob), false);
         }
 
 
-        public static Predicate<Path> byRegex(String regex) {
-            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(String.format("regex:%s", regex));
-            return new Predicate<Path>() {
+        public static AttributePredicate byRegex(String regex) {
+            return new PatternPredicate(String.format("regex:%s", regex), false);
+        }
+
+
+        public static AttributePredicate byLastModifiedTimestamp(final TimeUnit unit, final long from, final long to) {
+            return new AttributePredicate() {
+                private boolean accepts(long lastModified) {
+                    long time = Timing.convert(lastModified, TimeUnit.MILLISECONDS, unit);
+
+                    return from <= time && time < to;
+                }
+
+                @Override
+                public Boolean $(Path path, BasicFileAttributes attributes) {
+                    return accepts(attributes.lastModifiedTime().toMillis());
+                }
+
                 @Override
                 public Boolean $(Path x) {
-                    return matcher.matches(x);
+                    return accepts(x.toFile().lastModified());
                 }
             };
         }
 
+        /**
+         * Pattern tests are the cheapest ones, let them short-circuit the rest
+         */
+        private static List<Predicate<Path>> patternsFirst(Collection<Predicate<Path>> predicates) {
+            List<Predicate<Path>> ordered = new ArrayList<>();
+            List<Predicate<Path>> rest = new ArrayList<>();
+            for (Predicate<Path> predicate : predicates) {
+                (predicate instanceof PatternPredicate ? ordered : rest).add(predicate);
+            }
+
+            ordered.addAll(rest);
+            return ordered;
+        }
+
+        private static AttributePredicate combine(final List<Predicate<Path>> predicates, final boolean any) {
+            return new AttributePredicate() {
+                @Override
+                public Boolean $(Path path, BasicFileAttributes attributes) {
+                    for (Predicate<Path> predicate : predicates) {
+                        if (accepts(predicate, path, attributes) == any) {
+                            return any;
+                        }
+                    }
+
+                    return !any;
+                }
 
-        public static Predicate<Path> byLastModifiedTimestamp(final TimeUnit unit, final long from, final long to) {
-            return new Predicate<Path>() {
                 @Override
                 public Boolean $(Path x) {
-                    long time = Timing.convert(x.toFile().lastModified(), TimeUnit.MILLISECONDS, unit);
+                    for (Predicate<Path> predicate : predicates) {
+                        if (predicate.$(x) == any) {
+                            return any;
+                        }
+                    }
 
-                    return from <= time && time < to;
+                    return !any;
                 }
             };
         }
+
+        /**
+         * Path-aware counterpart of Predicates.and(): the combination is tested against the same attributes,
+         * pattern predicates are tested first
+         */
+        public static AttributePredicate and(Collection<Predicate<Path>> predicates) {
+            return combine(patternsFirst(predicates), false);
+        }
+
+        @SafeVarargs
+        public static AttributePredicate and(Predicate<Path> predicate, Predicate<Path>... rest) {
+            List<Predicate<Path>> predicates = new ArrayList<>();
+            predicates.add(predicate);
+            for (Predicate<Path> other : rest) {
+                predicates.add(other);
+            }
+
+            return and(predicates);
+        }
+
+        /**
+         * Path-aware counterpart of Predicates.or(): the combination is tested against the same attributes,
+         * pattern predicates are tested first
+         */
+        public static AttributePredicate or(Collection<Predicate<Path>> predicates) {
+            return combine(patternsFirst(predicates), true);
+        }
+
+        @SafeVarargs
+        public static AttributePredicate or(Predicate<Path> predicate, Predicate<Path>... rest) {
+            List<Predicate<Path>> predicates = new ArrayList<>();
+            predicates.add(predicate);
+            for (Predicate<Path> other : rest) {
+                predicates.add(other);
+            }
+
+            return or(predicates);
+        }
     }
 
 
@@ -469,6 +1627,272 @@ public final class Io {
         }
 
 
+        private static boolean isAsciiDigit(char symbol) {
+            return '0' <= symbol && symbol <= '9';
+        }
+
+        private static boolean includesAsciiDigit(String string, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (isAsciiDigit(string.charAt(index))) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private static boolean isAsciiNumeric(String string, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (!isAsciiDigit(string.charAt(index))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * End of the run of digits, respectively non-digits, that starts at the given index
+         */
+        private static int runEnd(String string, int from, int to) {
+            boolean digits = Character.isDigit(string.charAt(from));
+
+            int index = from + 1;
+            while (index < to && Character.isDigit(string.charAt(index)) == digits) {
+                index++;
+            }
+
+            return index;
+        }
+
+        private static int compareRegions(String x, int from, int to, String other, int otherFrom, int otherTo) {
+            int length = to - from;
+            int otherLength = otherTo - otherFrom;
+
+            for (int index = 0; index < Math.min(length, otherLength); index++) {
+                char symbol = x.charAt(from + index);
+                char otherSymbol = other.charAt(otherFrom + index);
+
+                if (symbol != otherSymbol) {
+                    return symbol - otherSymbol;
+                }
+            }
+
+            return length - otherLength;
+        }
+
+        /**
+         * Compares runs of ASCII digits by value: leading zeros are skipped, then the longer run is greater,
+         * otherwise the first differing digit decides
+         */
+        private static int compareNumericRuns(String x, int from, int to, String other, int otherFrom, int otherTo) {
+            while (from < to && x.charAt(from) == '0') {
+                from++;
+            }
+
+            while (otherFrom < otherTo && other.charAt(otherFrom) == '0') {
+                otherFrom++;
+            }
+
+            if (to - from != otherTo - otherFrom) {
+                return (to - from) - (otherTo - otherFrom);
+            }
+
+            return compareRegions(x, from, to, other, otherFrom, otherTo);
+        }
+
+        private static int compareSegmentsNaturally(String x, int from, int to, String other, int otherFrom, int otherTo) {
+            if (!includesAsciiDigit(x, from, to) && !includesAsciiDigit(other, otherFrom, otherTo)) {
+                return compareRegions(x, from, to, other, otherFrom, otherTo);
+            }
+
+            while (from < to && otherFrom < otherTo) {
+                int runEnd = runEnd(x, from, to);
+                int otherRunEnd = runEnd(other, otherFrom, otherTo);
+
+                int result = isAsciiNumeric(x, from, runEnd) && isAsciiNumeric(other, otherFrom, otherRunEnd) ?
+                        compareNumericRuns(x, from, runEnd, other, otherFrom, otherRunEnd) :
+                        compareRegions(x, from, runEnd, other, otherFrom, otherRunEnd);
+
+                if (result != 0) {
+                    return result;
+                }
+
+                from = runEnd;
+                otherFrom = otherRunEnd;
+            }
+
+            return from < to ? 1 : otherFrom < otherTo ? -1 : 0;
+        }
+
+        private static int rootLength(Path path) {
+            Path root = path.getRoot();
+            return root == null ? 0 : root.toString().length();
+        }
+
+        private static int segmentEnd(String string, int from, char separator) {
+            int index = string.indexOf(separator, from);
+            return index == -1 ? string.length() : index;
+        }
+
+        /**
+         * Orders paths exactly like byPathNumerically(), but scans the segments of both paths in place
+         * instead of splitting them into parts
+         */
+        private static final Comparator<Path> NATURAL_PATH_COMPARATOR = new Comparator<Path>() {
+            @Override
+            public int compare(Path path, Path other) {
+                String x = path.toString();
+                String that = other.toString();
+
+                char separator = path.getFileSystem().getSeparator().charAt(0);
+                char otherSeparator = other.getFileSystem().getSeparator().charAt(0);
+
+                int count = path.getNameCount();
+                int otherCount = other.getNameCount();
+
+                int from = rootLength(path);
+                int otherFrom = rootLength(other);
+                for (int segment = 0; segment < count && segment < otherCount; segment++) {
+                    int to = segmentEnd(x, from, separator);
+                    int otherTo = segmentEnd(that, otherFrom, otherSeparator);
+
+                    int result = compareSegmentsNaturally(x, from, to, that, otherFrom, otherTo);
+                    if (result != 0) {
+                        return result;
+                    }
+
+                    from = to + 1;
+                    otherFrom = otherTo + 1;
+                }
+
+                return otherCount < count ? 1 : count < otherCount ? -1 : 0;
+            }
+        };
+
+        public static Comparator<Path> byPathNaturally() {
+            return NATURAL_PATH_COMPARATOR;
+        }
+
+
+        /**
+         * Path encoded once into tokens that order exactly like byPathNumerically() when compared as plain strings.
+         * Every segment is a sequence of runs followed by SEGMENT_END; text runs are shifted above the terminators
+         * and followed by RUN_END; numeric runs become NUMERIC_RUN, their significant length and their
+         * significant digits. NUMERIC_RUN lies within the shifted digit range, so a numeric run meets a text run
+         * the same way their first symbols would
+         */
+        private static final class NaturalKey implements Comparable<NaturalKey> {
+            private static final char SEGMENT_END = 0;
+            private static final char RUN_END = 1;
+            private static final char SHIFT = 2;
+            private static final char NUMERIC_RUN = '0' + SHIFT;
+
+            private final Path path;
+            private final String tokens;
+
+            private NaturalKey(Path path, String tokens) {
+                this.path = path;
+                this.tokens = tokens;
+            }
+
+            /**
+             * @return null for the paths the encoding cannot represent: non-ASCII digits or the two topmost
+             * code units
+             */
+            static NaturalKey of(Path path) {
+                String string = path.toString();
+                char separator = path.getFileSystem().getSeparator().charAt(0);
+
+                StringBuilder tokens = new StringBuilder(string.length() + 8);
+
+                int from = rootLength(path);
+                for (int segment = 0; segment < path.getNameCount(); segment++) {
+                    int to = segmentEnd(string, from, separator);
+
+                    for (int run = from; run < to; ) {
+                        int end = runEnd(string, run, to);
+
+                        if (isAsciiDigit(string.charAt(run))) {
+                            if (!isAsciiNumeric(string, run, end)) {
+                                return null;
+                            }
+
+                            int significant = run;
+                            while (significant < end && string.charAt(significant) == '0') {
+                                significant++;
+                            }
+
+                            tokens.append(NUMERIC_RUN).append((char) (end - significant))
+                                    .append(string, significant, end);
+                        } else {
+                            for (int index = run; index < end; index++) {
+                                char symbol = string.charAt(index);
+                                if (Character.MAX_VALUE - SHIFT < symbol || Character.isDigit(symbol)) {
+                                    return null;
+                                }
+
+                                tokens.append((char) (symbol + SHIFT));
+                            }
+                        }
+
+                        tokens.append(RUN_END);
+                        run = end;
+                    }
+
+                    tokens.append(SEGMENT_END);
+                    from = to + 1;
+                }
+
+                return new NaturalKey(path, tokens.toString());
+            }
+
+            @Override
+            public int compareTo(NaturalKey other) {
+                return tokens.compareTo(other.tokens);
+            }
+        }
+
+        /**
+         * Sorts like Ordering.sort(), but orderings by path number are sorted on keys computed once per path
+         */
+        public static List<Path> sort(Comparator<Path> comparator, Iterable<Path> paths) {
+            if (comparator != NUMERICAL_PATH_COMPARATOR && comparator != NATURAL_PATH_COMPARATOR) {
+                List<Path> result = new ArrayList<>();
+                for (Path path : paths) {
+                    result.add(path);
+                }
+
+                Collections.sort(result, comparator);
+
+                return result;
+            }
+
+            List<NaturalKey> keys = new ArrayList<>();
+            for (Path path : paths) {
+                NaturalKey key = NaturalKey.of(path);
+                if (key == null) {
+                    return Ordering.sort(NATURAL_PATH_COMPARATOR, paths);
+                }
+
+                keys.add(key);
+            }
+
+            Collections.sort(keys);
+
+            List<Path> result = new ArrayList<>(keys.size());
+            for (NaturalKey key : keys) {
+                result.add(key.path);
+            }
+
+            return result;
+        }
+
+        public static List<Path> sortNaturally(Iterable<Path> paths) {
+            return sort(NATURAL_PATH_COMPARATOR, paths);
+        }
+
+
         private static final Function<Path, Long> SIZE = new Function<Path, Long>() {
             @Override
             public Long $(Path path) {
@@ -504,7 +1928,7 @@ public final class Io {
                         return FileVisitResult.CONTINUE;
                     }
 
-                    if (filter.$(directoryPath)) {
+                    if (PathFiltering.accepts(filter, directoryPath, attributes)) {
                         result.add(directoryPath.toAbsolutePath().normalize());
                     }
 
@@ -517,7 +1941,7 @@ public final class Io {
                         return FileVisitResult.CONTINUE;
                     }
 
-                    if (filter.$(filePath)) {
+                    if (PathFiltering.accepts(filter, filePath, attributes)) {
                         result.add(filePath.toAbsolutePath().normalize());
                     }
 
@@ -525,9 +1949,7 @@ public final class Io {
                 }
             });
 
-            Collections.sort(result, comparator);
-
-            return result;
+            return PathOrdering.sort(comparator, result);
         } catch (IOException exception) {
             throw new RuntimeException(exception);
         }
@@ -566,6 +1988,291 @@ public final class Io {
     }
 
 
+    private static final class WalkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final int depth;
+        private final Predicate<Path> filter;
+        private final Function<Path, Void> sink;
+        private final Function<IOException, Void> failed;
+        private final AtomicBoolean cancelled;
+
+        WalkTask(Path directory, int depth, Predicate<Path> filter, Function<Path, Void> sink,
+                 Function<IOException, Void> failed, AtomicBoolean cancelled) {
+            this.directory = directory;
+            this.depth = depth;
+            this.filter = filter;
+            this.sink = sink;
+            this.failed = failed;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            List<WalkTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (cancelled.get()) {
+                        break;
+                    }
+
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException exception) {
+                        failed.$(exception);
+                        continue;
+                    }
+
+                    if (PathFiltering.accepts(filter, entry, attributes)) {
+                        sink.$(entry.toAbsolutePath().normalize());
+                    }
+
+                    if (attributes.isDirectory() && 1 < depth) {
+                        WalkTask subtask = new WalkTask(entry, depth - 1, filter, sink, failed, cancelled);
+                        subtask.fork();
+
+                        subtasks.add(subtask);
+                    }
+                }
+            } catch (IOException exception) {
+                failed.$(exception);
+            } catch (DirectoryIteratorException exception) {
+                failed.$(exception.getCause());
+            }
+
+            for (WalkTask subtask : subtasks) {
+                subtask.join();
+            }
+        }
+    }
+
+    /**
+     * Like FileVisitor.visitFileFailed(): a directory that cannot be listed, or an entry that vanished before it
+     * could be read, is skipped by default, and recorded in the <i>"failures"</i> collection if there is one
+     */
+    private static Function<IOException, Void> walkFailures(Object... options) {
+        String errors = Maps.get(options, "errors", String.class, "default", "skip");
+        if (!"skip".equals(errors) && !"fail-fast".equals(errors)) {
+            throw new IllegalArgumentException(String.format("Invalid error policy: %s", errors));
+        }
+
+        final boolean failFast = "fail-fast".equals(errors);
+        @SuppressWarnings("unchecked")
+        final Collection<IOException> failures = Maps.get(options, "failures", Collection.class, "default", null);
+
+        return new Function<IOException, Void>() {
+            @Override
+            public Void $(IOException exception) {
+                if (failFast) {
+                    throw new RuntimeException(exception);
+                }
+
+                if (failures != null) {
+                    synchronized (failures) {
+                        failures.add(exception);
+                    }
+                }
+
+                return null;
+            }
+        };
+    }
+
+    private static int parallelism(Object... options) {
+        return Maps.get(options, "parallelism", Integer.class, "default", Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Walks the tree on a fork/join pool. Entries are tested against the attributes read while listing
+     * their directory, so PathFiltering predicates do not stat them again.
+     * <p>
+     * Options: <i>"depth"</i>, <i>"parallelism"</i>, <i>"errors"</i> (<i>"skip"</i> or <i>"fail-fast"</i>),
+     * <i>"failures"</i> (Collection to record skipped errors in)
+     */
+    public static List<Path> walkPaths(Path path, Predicate<Path> filter, Comparator<Path> comparator,
+                                       Object... options) {
+        if (!Files.isDirectory(path)) {
+            return new ArrayList<>();
+        }
+
+        final Queue<Path> found = new ConcurrentLinkedQueue<>();
+        Function<Path, Void> sink = new Function<Path, Void>() {
+            @Override
+            public Void $(Path x) {
+                found.add(x);
+                return null;
+            }
+        };
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism(options));
+        try {
+            pool.invoke(new WalkTask(path, Maps.get(options, "depth", Integer.class, "default", Integer.MAX_VALUE),
+                    filter, sink, walkFailures(options), new AtomicBoolean()));
+        } finally {
+            terminate(pool);
+        }
+
+        return PathOrdering.sort(comparator, found);
+    }
+
+    /**
+     * Lazily walked paths in no particular order. Every iterator walks the tree on its own fork/join pool
+     * while the consumer is iterating, at most a queue capacity of paths ahead of it; closing the iterable
+     * stops walks that have been abandoned
+     */
+    public static final class PathWalk implements Iterable<Path>, Closeable {
+        private static final Path END = Paths.get("");
+        private static final long OFFER_INTERVAL = 100;
+
+        private final Path path;
+        private final Predicate<Path> filter;
+
+        private final int depth;
+        private final int parallelism;
+        private final int capacity;
+        private final Function<IOException, Void> failed;
+
+        private final Map<AtomicBoolean, ForkJoinPool> running = new ConcurrentHashMap<>();
+
+        PathWalk(Path path, Predicate<Path> filter, int depth, int parallelism, int capacity,
+                 Function<IOException, Void> failed) {
+            this.path = path;
+            this.filter = filter;
+            this.depth = depth;
+            this.parallelism = parallelism;
+            this.capacity = capacity;
+            this.failed = failed;
+        }
+
+        /**
+         * Blocks the walker while the queue is full, until the consumer catches up or the walk is cancelled
+         */
+        private static void offer(BlockingQueue<Path> found, Path path, AtomicBoolean cancelled) {
+            try {
+                while (!found.offer(path, OFFER_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    if (cancelled.get()) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                cancelled.set(true);
+            }
+        }
+
+        @Override
+        public Iterator<Path> iterator() {
+            final BlockingQueue<Path> found = new LinkedBlockingQueue<>(capacity);
+            final AtomicBoolean cancelled = new AtomicBoolean();
+            final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+            final Function<Path, Void> sink = new Function<Path, Void>() {
+                @Override
+                public Void $(Path x) {
+                    offer(found, x, cancelled);
+                    return null;
+                }
+            };
+
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            running.put(cancelled, pool);
+            pool.execute(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    try {
+                        if (Files.isDirectory(path)) {
+                            new WalkTask(path, depth, filter, sink, failed, cancelled).invoke();
+                        }
+                    } catch (RuntimeException exception) {
+                        failure.set(exception);
+                    } finally {
+                        offer(found, END, cancelled);
+                    }
+                }
+            });
+
+            return new Iterator<Path>() {
+                private Path next;
+
+                /**
+                 * Once the walk is closed the walker may give up before END fits into the queue, so the consumer
+                 * stops waiting as soon as the queue runs dry
+                 */
+                @Override
+                public boolean hasNext() {
+                    if (next == null) {
+                        try {
+                            while (next == null) {
+                                next = found.poll(OFFER_INTERVAL, TimeUnit.MILLISECONDS);
+                                if (next == null && cancelled.get()) {
+                                    next = END;
+                                }
+                            }
+                        } catch (InterruptedException exception) {
+                            Thread.currentThread().interrupt();
+                            next = END;
+                        }
+
+                        if (next == END) {
+                            running.remove(cancelled);
+                            pool.shutdown();
+                        }
+                    }
+
+                    if (next == END && failure.get() != null) {
+                        throw failure.get();
+                    }
+
+                    return next != END;
+                }
+
+                @Override
+                public Path next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    Path result = next;
+                    next = null;
+
+                    return result;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            for (Map.Entry<AtomicBoolean, ForkJoinPool> walk : running.entrySet()) {
+                walk.getKey().set(true);
+                walk.getValue().shutdown();
+            }
+
+            running.clear();
+        }
+    }
+
+    /**
+     * Options: <i>"depth"</i>, <i>"parallelism"</i>, <i>"queue-capacity"</i>, <i>"errors"</i> (<i>"skip"</i>
+     * or <i>"fail-fast"</i>), <i>"failures"</i> (Collection to record skipped errors in)
+     */
+    public static PathWalk walkPaths(Path path, Predicate<Path> filter, Object... options) {
+        return new PathWalk(path, filter,
+                Maps.get(options, "depth", Integer.class, "default", Integer.MAX_VALUE),
+                parallelism(options),
+                Maps.get(options, "queue-capacity", Integer.class, "default", 1024),
+                walkFailures(options));
+    }
+
+
     private static final class Formatting {
         public static String formatTree(final Path path) {
             try {
@@ -1,6 +1,8 @@
 package core;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.TimeUnit;
 
 import static java.util.Arrays.asList;
@@ -18,14 +20,113 @@ public final class Iterables {
         return result;
     }
 
+    /**
+     * Positional slices of an array or a random access list share the backing elements.
+     */
+    private abstract static class IndexedSlice<X> implements Splittable<X> {
+        final int lo;
+        final int hi;
+
+        IndexedSlice(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        abstract X at(int index);
+
+        abstract IndexedSlice<X> between(int lo, int hi);
+
+        @Override
+        public long size() {
+            return hi - lo;
+        }
+
+        @Override
+        public Splittable<X> slice(long from, long to) {
+            if (from < 0 || to < from || size() < to) {
+                throw new IndexOutOfBoundsException(String.format("Invalid slice [%d, %d) of %d", from, to, size()));
+            }
+
+            return between(lo + (int) from, lo + (int) to);
+        }
+
+        @Override
+        public Iterator<X> iterator() {
+            return new Iterator<X>() {
+                private int index = lo;
+
+                @Override
+                public boolean hasNext() {
+                    return index < hi;
+                }
+
+                @Override
+                public X next() {
+                    if (hi <= index) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return at(index++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    private static final class ArraySlice<X> extends IndexedSlice<X> {
+        private final Object[] elements;
+
+        ArraySlice(Object[] elements, int lo, int hi) {
+            super(lo, hi);
+            this.elements = elements;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        X at(int index) {
+            return (X) elements[index];
+        }
+
+        @Override
+        IndexedSlice<X> between(int lo, int hi) {
+            return new ArraySlice<>(elements, lo, hi);
+        }
+    }
+
+    private static final class ListSlice<X> extends IndexedSlice<X> {
+        private final List<X> elements;
+
+        ListSlice(List<X> elements, int lo, int hi) {
+            super(lo, hi);
+            this.elements = elements;
+        }
+
+        @Override
+        X at(int index) {
+            return elements.get(index);
+        }
+
+        @Override
+        IndexedSlice<X> between(int lo, int hi) {
+            return new ListSlice<>(elements, lo, hi);
+        }
+    }
+
+    /**
+     * Wraps the array itself; the slice only ever reads it.
+     */
     @SafeVarargs
+    @SuppressWarnings("varargs")
     public static <X> Iterable<X> asIterable(final X... elements) {
-        return new Iterable<X>() {
-            @Override
-            public Iterator<X> iterator() {
-                return Iterators.asIterator(elements);
-            }
-        };
+        if (elements == null) {
+            return emptyIterable();
+        }
+
+        return new ArraySlice<>(elements, 0, elements.length);
     }
 
     public static <X> List<X> toList(Iterable<X> iterable) {
@@ -138,125 +239,407 @@ public final class Iterables {
     }
 
 
-    private static <X> Iterable<X> concat(final Iterable<X> first, final Iterable<X> other) {
-        return new Iterable<X>() {
-            @Override
-            public Iterator<X> iterator() {
-                return new Iterator<X>() {
-                    private final Iterator<X> firstIterator = first.iterator();
-                    private final Iterator<X> otherIterator = other.iterator();
+    /**
+     * The parts of one or more concatenations, in a window [lo, hi) of indexes that only ever widens, at either
+     * end. Slots inside the window never change, so every concatenation is just a range of it, and extending the
+     * one that reaches an end of the window costs amortized constant time. Each part also records where it starts,
+     * counting sized parts only, so that the sized ranges can find the part holding an offset.
+     */
+    private static final class Parts<X> {
+        private Object[] parts = new Object[16];
+        private long[] starts = new long[17];
+        private int origin = 8;
 
-                    @Override
-                    public boolean hasNext() {
-                        return firstIterator.hasNext() || otherIterator.hasNext();
-                    }
+        private int lo;
+        private int hi;
 
-                    @Override
-                    public X next() {
-                        if (firstIterator.hasNext()) {
-                            return firstIterator.next();
-                        }
+        private static long sizeOf(Iterable<?> part) {
+            return part instanceof Splittable ? ((Splittable<?>) part).size() : 0;
+        }
+
+        private void ensureRoom(int before, int after) {
+            if (before <= origin + lo && origin + hi + after <= parts.length) {
+                return;
+            }
+
+            int count = hi - lo;
+            int length = Math.max(2 * parts.length, count + before + after + 16);
+            int start = before + (length - count - before - after) / 2;
+
+            Object[] grownParts = new Object[length];
+            long[] grownStarts = new long[length + 1];
+            System.arraycopy(parts, origin + lo, grownParts, start, count);
+            System.arraycopy(starts, origin + lo, grownStarts, start, count + 1);
+
+            parts = grownParts;
+            starts = grownStarts;
+            origin = start - lo;
+        }
+
+        /**
+         * Appends the parts when end is the end of the window.
+         *
+         * @return whether they were appended
+         */
+        synchronized boolean append(int end, List<Iterable<X>> more) {
+            if (end != hi) {
+                return false;
+            }
+
+            ensureRoom(0, more.size());
+            for (Iterable<X> part : more) {
+                parts[origin + hi] = part;
+                starts[origin + hi + 1] = starts[origin + hi] + sizeOf(part);
+                hi++;
+            }
+
+            return true;
+        }
+
+        /**
+         * Prepends the parts when start is the start of the window.
+         *
+         * @return whether they were prepended
+         */
+        synchronized boolean prepend(int start, List<Iterable<X>> before) {
+            if (start != lo) {
+                return false;
+            }
+
+            ensureRoom(before.size(), 0);
+            for (int index = before.size() - 1; 0 <= index; index--) {
+                Iterable<X> part = before.get(index);
+
+                lo--;
+                parts[origin + lo] = part;
+                starts[origin + lo] = starts[origin + lo + 1] - sizeOf(part);
+            }
+
+            return true;
+        }
+
+        synchronized Iterable<X> get(int index) {
+            @SuppressWarnings("unchecked") Iterable<X> result = (Iterable<X>) parts[origin + index];
+            return result;
+        }
+
+        /**
+         * @return where the part at index starts, or for hi where the last part ends
+         */
+        synchronized long start(int index) {
+            return starts[origin + index];
+        }
+    }
+
+    /**
+     * A range of shared parts laid end to end.
+     */
+    private abstract static class Chain<X> implements Iterable<X> {
+        final Parts<X> parts;
+        final int lo;
+        final int hi;
+
+        Chain(Parts<X> parts, int lo, int hi) {
+            this.parts = parts;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        /**
+         * @return whether the chain covers its parts in full, so that it may be extended in place
+         */
+        abstract boolean isWhole();
+
+        /**
+         * Adds the parts of the chain to the list, the ones it only partly covers sliced down.
+         */
+        abstract void addPartsTo(List<Iterable<X>> target);
 
-                        return otherIterator.next();
+        abstract Iterator<X> iterator(int index);
+
+        @Override
+        public Iterator<X> iterator() {
+            return new Iterator<X>() {
+                private int index = lo;
+                private Iterator<X> it = Collections.emptyIterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!it.hasNext() && index < hi) {
+                        it = iterator(index++);
                     }
 
-                    @Override
-                    public void remove() {
-                        throw new UnsupportedOperationException();
+                    return it.hasNext();
+                }
+
+                @Override
+                public X next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
                     }
-                };
+
+                    return it.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * Sized parts laid end to end; a slice shares the parts it overlaps and only cuts the ones at its ends.
+     */
+    private static final class ConcatSlice<X> extends Chain<X> implements Splittable<X> {
+        private final long from;
+        private final long to;
+
+        ConcatSlice(Parts<X> parts, int lo, int hi, long from, long to) {
+            super(parts, lo, hi);
+            this.from = from;
+            this.to = to;
+        }
+
+        ConcatSlice(Parts<X> parts, int lo, int hi) {
+            this(parts, lo, hi, parts.start(lo), parts.start(hi));
+        }
+
+        @Override
+        boolean isWhole() {
+            return from == parts.start(lo) && to == parts.start(hi);
+        }
+
+        @Override
+        public long size() {
+            return to - from;
+        }
+
+        @Override
+        public Splittable<X> slice(long from, long to) {
+            if (from < 0 || to < from || size() < to) {
+                throw new IndexOutOfBoundsException(String.format("Invalid slice [%d, %d) of %d", from, to, size()));
             }
-        };
+
+            long start = this.from + from;
+            long end = this.from + to;
+            if (start == end) {
+                return new ConcatSlice<>(parts, lo, lo, start, end);
+            }
+
+            int first = lo;
+            for (int high = hi - 1; first < high; ) {
+                int middle = first + (high - first + 1) / 2;
+                if (parts.start(middle) <= start) {
+                    first = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            int last = hi;
+            for (int low = first + 1; low < last; ) {
+                int middle = low + (last - low) / 2;
+                if (end <= parts.start(middle)) {
+                    last = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+
+            if (last - first == 1) {
+                long offset = parts.start(first);
+                return ((Splittable<X>) parts.get(first)).slice(start - offset, end - offset);
+            }
+
+            return new ConcatSlice<>(parts, first, last, start, end);
+        }
+
+        /**
+         * @return the part at index cut down to the slice, or null when they do not overlap
+         */
+        private Iterable<X> cut(int index) {
+            Splittable<X> part = (Splittable<X>) parts.get(index);
+            long offset = parts.start(index);
+
+            long start = Math.max(from, offset) - offset;
+            long end = Math.min(to, offset + part.size()) - offset;
+            if (end <= start) {
+                return null;
+            }
+
+            return start == 0 && end == part.size() ? part : part.slice(start, end);
+        }
+
+        @Override
+        void addPartsTo(List<Iterable<X>> target) {
+            for (int index = lo; index < hi; index++) {
+                Iterable<X> part = cut(index);
+                if (part != null) {
+                    target.add(part);
+                }
+            }
+        }
+
+        @Override
+        Iterator<X> iterator(int index) {
+            Iterable<X> part = cut(index);
+            return part != null ? part.iterator() : Collections.<X>emptyIterator();
+        }
     }
 
-    @SafeVarargs
-    public static <X> Iterable<X> concat(final Iterable<X> first, final Iterable<X>... others) {
-        if (first == null) {
-            return emptyIterable();
+    /**
+     * Parts of unknown size laid end to end and walked with an index, so every element costs the same however
+     * many parts there are.
+     */
+    private static final class Concatenation<X> extends Chain<X> {
+        Concatenation(Parts<X> parts, int lo, int hi) {
+            super(parts, lo, hi);
         }
 
-        if (others == null || others.length == 0) {
-            return first;
+        @Override
+        boolean isWhole() {
+            return true;
         }
 
-        Iterable<X> result = concat(first, first(asList(others)));
-        for (Iterable<X> other : rest(asList(others))) {
-            result = concat(result, other);
+        @Override
+        void addPartsTo(List<Iterable<X>> target) {
+            for (int index = lo; index < hi; index++) {
+                target.add(parts.get(index));
+            }
         }
 
-        return result;
+        @Override
+        Iterator<X> iterator(int index) {
+            return parts.get(index).iterator();
+        }
     }
 
-    public static <X> Iterable<X> cons(final X element, final Iterable<X> iterable) {
-        return new Iterable<X>() {
-            @Override
-            public Iterator<X> iterator() {
-                return new Iterator<X>() {
-                    private final Iterator<X> it = iterable.iterator();
+    /**
+     * Nested concatenations contribute their parts rather than themselves, and the empty iterable nothing.
+     */
+    private static <X> void addParts(List<Iterable<X>> parts, Iterable<X> iterable) {
+        if (iterable == EMPTY_ITERABLE) {
+            return;
+        }
 
-                    private X dispatched = element;
+        if (iterable instanceof Chain) {
+            ((Chain<X>) iterable).addPartsTo(parts);
+        } else {
+            parts.add(iterable);
+        }
+    }
 
-                    @Override
-                    public boolean hasNext() {
-                        return dispatched != null || it.hasNext();
-                    }
+    private static <X> boolean allSized(List<Iterable<X>> parts) {
+        for (Iterable<X> part : parts) {
+            if (!(part instanceof Splittable)) {
+                return false;
+            }
+        }
 
-                    @Override
-                    public X next() {
-                        if (dispatched != null) {
-                            X result = dispatched;
-                            dispatched = null;
+        return true;
+    }
 
-                            return result;
-                        }
+    private static <X> Iterable<X> chain(Parts<X> parts, int lo, int hi, boolean sized) {
+        return sized ? new ConcatSlice<>(parts, lo, hi) : new Concatenation<>(parts, lo, hi);
+    }
 
-                        return it.next();
-                    }
+    /**
+     * Extends the chain in place when it is whole and reaches the matching end of its parts, and copies its parts
+     * into new ones otherwise, which only happens when some other chain has already been extended there.
+     */
+    private static <X> Iterable<X> extend(Chain<X> chain, List<Iterable<X>> before, List<Iterable<X>> after) {
+        if (before.isEmpty() && after.isEmpty()) {
+            return chain;
+        }
 
-                    @Override
-                    public void remove() {
-                        throw new UnsupportedOperationException();
-                    }
-                };
+        boolean sized = chain instanceof ConcatSlice && allSized(before) && allSized(after);
+
+        if (chain.isWhole()) {
+            if (before.isEmpty() && chain.parts.append(chain.hi, after)) {
+                return chain(chain.parts, chain.lo, chain.hi + after.size(), sized);
             }
-        };
+
+            if (after.isEmpty() && chain.parts.prepend(chain.lo, before)) {
+                return chain(chain.parts, chain.lo - before.size(), chain.hi, sized);
+            }
+        }
+
+        List<Iterable<X>> all = new ArrayList<>(before);
+        chain.addPartsTo(all);
+        all.addAll(after);
+
+        Parts<X> parts = new Parts<>();
+        parts.append(0, all);
+
+        return chain(parts, 0, all.size(), sized);
     }
 
-    public static <X> Iterable<X> conj(final Iterable<X> iterable, final X element) {
-        return new Iterable<X>() {
-            @Override
-            public Iterator<X> iterator() {
-                return new Iterator<X>() {
-                    private final Iterator<X> it = iterable == null ?
-                            Collections.<X>emptyIterator() :
-                            iterable.iterator();
+    private static <X> Iterable<X> concatenation(Iterable<X> first, List<Iterable<X>> others) {
+        if (!(first instanceof Chain) && others.size() == 1 && others.get(0) instanceof Chain) {
+            List<Iterable<X>> before = new ArrayList<>();
+            addParts(before, first);
 
-                    private X dispatched = element;
+            return extend((Chain<X>) others.get(0), before, Collections.<Iterable<X>>emptyList());
+        }
 
-                    @Override
-                    public boolean hasNext() {
-                        return it.hasNext() || dispatched != null;
-                    }
+        List<Iterable<X>> more = new ArrayList<>();
+        for (Iterable<X> other : others) {
+            addParts(more, other);
+        }
 
-                    @Override
-                    public X next() {
-                        if (it.hasNext()) {
-                            return it.next();
-                        }
+        if (first instanceof Chain) {
+            return extend((Chain<X>) first, Collections.<Iterable<X>>emptyList(), more);
+        }
 
-                        X result = dispatched;
-                        dispatched = null;
+        List<Iterable<X>> all = new ArrayList<>();
+        addParts(all, first);
+        all.addAll(more);
 
-                        return result;
-                    }
+        Parts<X> parts = new Parts<>();
+        parts.append(0, all);
 
-                    @Override
-                    public void remove() {
-                        throw new UnsupportedOperationException();
-                    }
-                };
-            }
-        };
+        return chain(parts, 0, all.size(), allSized(all));
+    }
+
+    @SafeVarargs
+    public static <X> Iterable<X> concat(final Iterable<X> first, final Iterable<X>... others) {
+        if (first == null) {
+            return emptyIterable();
+        }
+
+        if (others == null || others.length == 0) {
+            return first;
+        }
+
+        List<Iterable<X>> rest = new ArrayList<>(others.length);
+        for (Iterable<X> other : others) {
+            rest.add(other);
+        }
+
+        return concatenation(first, rest);
+    }
+
+    /**
+     * A null element contributes nothing.
+     */
+    private static <X> Iterable<X> single(X element) {
+        if (element == null) {
+            return emptyIterable();
+        }
+
+        return new ArraySlice<>(new Object[]{element}, 0, 1);
+    }
+
+    public static <X> Iterable<X> cons(final X element, final Iterable<X> iterable) {
+        return concatenation(single(element),
+                Collections.singletonList(iterable == null ? Iterables.<X>emptyIterable() : iterable));
+    }
+
+    public static <X> Iterable<X> conj(final Iterable<X> iterable, final X element) {
+        return concatenation(iterable == null ? Iterables.<X>emptyIterable() : iterable,
+                Collections.singletonList(single(element)));
     }
 
 
@@ -295,27 +678,91 @@ public final class Iterables {
         };
     }
 
+    /**
+     * Keeps the last capacity elements pushed into it; grows up to capacity, so a large capacity
+     * costs nothing until that many elements arrive.
+     */
+    private static final class Ring<X> {
+        private final int capacity;
+
+        private Object[] elements;
+        private int size;
+        private int head;
+
+        Ring(int capacity) {
+            this.capacity = capacity;
+            this.elements = new Object[Math.min(capacity, 16)];
+        }
+
+        boolean isFull() {
+            return size == capacity;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the oldest element once the ring is full, which the pushed one replaces; null before that
+         */
+        X push(X x) {
+            if (size < capacity) {
+                if (size == elements.length) {
+                    elements = Arrays.copyOf(elements, (int) Math.min(capacity, 2L * elements.length));
+                }
+
+                elements[size++] = x;
+                return null;
+            }
+
+            @SuppressWarnings("unchecked") X oldest = (X) elements[head];
+            elements[head] = x;
+            head = (head + 1) % capacity;
+
+            return oldest;
+        }
+
+        X get(int index) {
+            @SuppressWarnings("unchecked") X result = (X) elements[(head + index) % elements.length];
+            return result;
+        }
+    }
+
+    /**
+     * Single pass; holds back the last enough elements in a ring.
+     */
     public static <X> Iterable<X> dropLast(final int enough, final Iterable<X> iterable) {
         if (iterable == null) {
             return emptyIterable();
         }
 
+        if (enough <= 0) {
+            return iterable;
+        }
+
         return new Iterable<X>() {
             @Override
             public Iterator<X> iterator() {
                 return new Iterator<X>() {
-                    private final Iterator<X> lead = drop(enough, iterable).iterator();
                     private final Iterator<X> it = iterable.iterator();
+                    private final Ring<X> held = new Ring<>(enough);
 
                     @Override
                     public boolean hasNext() {
-                        return lead.hasNext() && it.hasNext();
+                        while (!held.isFull() && it.hasNext()) {
+                            held.push(it.next());
+                        }
+
+                        return held.isFull() && it.hasNext();
                     }
 
                     @Override
                     public X next() {
-                        lead.next();
-                        return it.next();
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        return held.push(it.next());
                     }
 
                     @Override
@@ -337,6 +784,11 @@ public final class Iterables {
             return emptyIterable();
         }
 
+        if (iterable instanceof Splittable) {
+            Splittable<X> splittable = (Splittable<X>) iterable;
+            return splittable.slice(0, Math.max(0, Math.min(enough, splittable.size())));
+        }
+
         return new Iterable<X>() {
             @Override
             public Iterator<X> iterator() {
@@ -364,8 +816,11 @@ public final class Iterables {
         };
     }
 
+    /**
+     * Single pass; the source is drained into a ring of the last enough elements on the first call to the iterator.
+     */
     public static <X> Iterable<X> takeLast(final int enough, final Iterable<X> iterable) {
-        if (iterable == null) {
+        if (iterable == null || enough <= 0) {
             return emptyIterable();
         }
 
@@ -373,21 +828,32 @@ public final class Iterables {
             @Override
             public Iterator<X> iterator() {
                 return new Iterator<X>() {
-                    private final Iterator<X> lead = drop(enough, iterable).iterator();
-                    private final Iterator<X> it = iterable.iterator();
+                    private Ring<X> kept;
+                    private int index;
+
+                    private Ring<X> kept() {
+                        if (kept == null) {
+                            kept = new Ring<>(enough);
+                            for (X x : iterable) {
+                                kept.push(x);
+                            }
+                        }
 
-                    {
-                        for (; lead.hasNext() && it.hasNext(); lead.next(), it.next()) ;
+                        return kept;
                     }
 
                     @Override
                     public boolean hasNext() {
-                        return it.hasNext();
+                        return index < kept().size();
                     }
 
                     @Override
                     public X next() {
-                        return it.next();
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        return kept.get(index++);
                     }
 
                     @Override
@@ -540,5 +1006,171 @@ public final class Iterables {
             }
         };
     }
+
+    public interface Reducer<X> {
+        X invoke(X accumulated, X x);
+    }
+
+    private interface Leaf<X, R> {
+        R invoke(Splittable<X> slice, long offset);
+    }
+
+    private static final long SMALLEST_SLICE = 1024;
+
+    /**
+     * Halves its slice until it is small enough, forking the left half and computing the right one in place.
+     */
+    private static final class SplittingTask<X, R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        private final Splittable<X> slice;
+        private final long offset;
+        private final long threshold;
+        private final Leaf<X, R> leaf;
+        private final Reducer<R> reducer;
+
+        SplittingTask(Splittable<X> slice, long offset, long threshold, Leaf<X, R> leaf, Reducer<R> reducer) {
+            this.slice = slice;
+            this.offset = offset;
+            this.threshold = threshold;
+            this.leaf = leaf;
+            this.reducer = reducer;
+        }
+
+        @Override
+        protected R compute() {
+            long size = slice.size();
+            if (size <= threshold) {
+                return leaf.invoke(slice, offset);
+            }
+
+            long middle = size / 2;
+            SplittingTask<X, R> left = new SplittingTask<>(slice.slice(0, middle), offset, threshold, leaf, reducer);
+            SplittingTask<X, R> right = new SplittingTask<>(slice.slice(middle, size), offset + middle, threshold, leaf, reducer);
+
+            left.fork();
+            R rightResult = right.compute();
+
+            return reducer.invoke(left.join(), rightResult);
+        }
+    }
+
+    /**
+     * Sources that cannot be split are copied into a list first.
+     */
+    private static <X> Splittable<X> splittable(Iterable<X> iterable) {
+        if (iterable == null) {
+            return new ListSlice<>(Collections.<X>emptyList(), 0, 0);
+        }
+
+        if (iterable instanceof Splittable) {
+            return (Splittable<X>) iterable;
+        }
+
+        List<X> list;
+        if (iterable instanceof List && iterable instanceof RandomAccess) {
+            list = (List<X>) iterable;
+        } else {
+            list = new ArrayList<>();
+            for (X x : iterable) {
+                list.add(x);
+            }
+        }
+
+        return new ListSlice<>(list, 0, list.size());
+    }
+
+    private static <X, R> R inParallel(Splittable<X> splittable, Leaf<X, R> leaf, Reducer<R> reducer, Object... options) {
+        int parallelism = Maps.get(options, "parallelism", Integer.class, "default", Runtime.getRuntime().availableProcessors());
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("Invalid parallelism: %d", parallelism));
+        }
+
+        long threshold = Math.max(SMALLEST_SLICE, splittable.size() / (parallelism * 4L));
+        if (parallelism == 1 || splittable.size() <= threshold) {
+            return leaf.invoke(splittable, 0);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new SplittingTask<>(splittable, 0, threshold, leaf, reducer));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Folds slices on a fork/join pool and then folds their results, so the reducer has to be associative
+     * and identity neutral to it.
+     * <p>
+     * Options: <i>"parallelism"</i>
+     */
+    public static <X> X reduceInParallel(Iterable<X> iterable, final X identity, final Reducer<X> reducer,
+                                         Object... options) {
+        return inParallel(splittable(iterable), new Leaf<X, X>() {
+            @Override
+            public X invoke(Splittable<X> slice, long offset) {
+                X result = identity;
+                for (X x : slice) {
+                    result = reducer.invoke(result, x);
+                }
+
+                return result;
+            }
+        }, reducer, options);
+    }
+
+    private static final Reducer<Object> NOTHING = new Reducer<Object>() {
+        @Override
+        public Object invoke(Object accumulated, Object x) {
+            return null;
+        }
+    };
+
+    /**
+     * Calls the procedure from several threads, in no particular order.
+     * <p>
+     * Options: <i>"parallelism"</i>
+     */
+    public static <X> void forEachInParallel(Iterable<X> iterable, final Function<X, Void> procedure, Object... options) {
+        inParallel(splittable(iterable), new Leaf<X, Object>() {
+            @Override
+            public Object invoke(Splittable<X> slice, long offset) {
+                for (X x : slice) {
+                    procedure.$(x);
+                }
+
+                return null;
+            }
+        }, NOTHING, options);
+    }
+
+    /**
+     * Every slice copies its elements into its own positions of the result, which keeps the source order.
+     * <p>
+     * Options: <i>"parallelism"</i>
+     */
+    public static <X> List<X> toListInParallel(Iterable<X> iterable, Object... options) {
+        Splittable<X> splittable = splittable(iterable);
+        if (Integer.MAX_VALUE - 8 < splittable.size()) {
+            throw new IllegalArgumentException(String.format("Too many elements for a list: %d", splittable.size()));
+        }
+
+        final Object[] result = new Object[(int) splittable.size()];
+        inParallel(splittable, new Leaf<X, Object>() {
+            @Override
+            public Object invoke(Splittable<X> slice, long offset) {
+                int index = (int) offset;
+                for (X x : slice) {
+                    result[index++] = x;
+                }
+
+                return null;
+            }
+        }, NOTHING, options);
+
+        @SuppressWarnings("unchecked") List<X> list = (List<X>) asList(result);
+        return new ArrayList<>(list);
+    }
 }
 
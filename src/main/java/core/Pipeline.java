@@ -0,0 +1,280 @@
+package core;
+
+import java.util.*;
+
+/**
+ * Fuses drop, filter, walk/map, take and mapString stages into one loop that pushes every source element through
+ * the stages, instead of stacking one iterator per stage. Pipelines are immutable; every stage returns a new one, and
+ * every traversal starts from the source again.
+ */
+public final class Pipeline<X> implements Iterable<X> {
+    /**
+     * Receives the elements pushed through a pipeline; returns false once it wants no more of them.
+     */
+    interface Sink<X> {
+        boolean accept(X x);
+    }
+
+    /**
+     * Wraps the sink of the next stage; called once per traversal, so the returned sink may keep state.
+     */
+    interface Stage<X, F> {
+        Sink<X> wrap(Sink<F> downstream);
+    }
+
+    private final Iterable<?> source;
+    private final Object[] elements;
+
+    private final Pipeline<?> upstream;
+    private final Stage<?, X> stage;
+
+    private Pipeline(Iterable<?> source, Object[] elements, Pipeline<?> upstream, Stage<?, X> stage) {
+        this.source = source;
+        this.elements = elements;
+        this.upstream = upstream;
+        this.stage = stage;
+    }
+
+    public static <X> Pipeline<X> of(Iterable<X> iterable) {
+        return new Pipeline<X>(iterable == null ? Iterables.<X>emptyIterable() : iterable, null, null, null);
+    }
+
+    @SafeVarargs
+    public static <X> Pipeline<X> of(X... elements) {
+        return new Pipeline<X>(null, elements == null ? new Object[0] : elements, null, null);
+    }
+
+    private <F> Pipeline<F> then(Stage<X, F> next) {
+        return new Pipeline<F>(source, elements, this, next);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Sink<Object> wrap(Sink<X> terminal) {
+        Sink<?> result = terminal;
+        for (Pipeline<?> pipeline = this; pipeline.stage != null; pipeline = pipeline.upstream) {
+            result = ((Stage<Object, Object>) pipeline.stage).wrap((Sink<Object>) result);
+        }
+
+        return (Sink<Object>) result;
+    }
+
+    /**
+     * Pushes the source through the stages until it runs out or a stage short-circuits.
+     */
+    private void push(Sink<X> terminal) {
+        Sink<Object> sink = wrap(terminal);
+
+        if (elements != null) {
+            for (Object element : elements) {
+                if (!sink.accept(element)) {
+                    return;
+                }
+            }
+        } else if (source instanceof List && source instanceof RandomAccess) {
+            List<?> list = (List<?>) source;
+            for (int index = 0, size = list.size(); index < size; index++) {
+                if (!sink.accept(list.get(index))) {
+                    return;
+                }
+            }
+        } else {
+            for (Iterator<?> it = source.iterator(); it.hasNext(); ) {
+                if (!sink.accept(it.next())) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public Pipeline<X> drop(final int enough) {
+        if (enough <= 0) {
+            return this;
+        }
+
+        return then(new Stage<X, X>() {
+            @Override
+            public Sink<X> wrap(final Sink<X> downstream) {
+                return new Sink<X>() {
+                    private int dropped;
+
+                    @Override
+                    public boolean accept(X x) {
+                        if (dropped < enough) {
+                            dropped++;
+                            return true;
+                        }
+
+                        return downstream.accept(x);
+                    }
+                };
+            }
+        });
+    }
+
+    public Pipeline<X> filter(final Predicate<X> predicate) {
+        return then(new Stage<X, X>() {
+            @Override
+            public Sink<X> wrap(final Sink<X> downstream) {
+                return new Sink<X>() {
+                    @Override
+                    public boolean accept(X x) {
+                        return !predicate.$(x) || downstream.accept(x);
+                    }
+                };
+            }
+        });
+    }
+
+    public <F> Pipeline<F> map(final Function<X, F> function) {
+        return then(new Stage<X, F>() {
+            @Override
+            public Sink<X> wrap(final Sink<F> downstream) {
+                return new Sink<X>() {
+                    @Override
+                    public boolean accept(X x) {
+                        return downstream.accept(function.$(x));
+                    }
+                };
+            }
+        });
+    }
+
+    public <F> Pipeline<F> walk(final Walking.Inner<X, F> inner) {
+        return then(new Stage<X, F>() {
+            @Override
+            public Sink<X> wrap(final Sink<F> downstream) {
+                return new Sink<X>() {
+                    @Override
+                    public boolean accept(X x) {
+                        return downstream.accept(inner.invoke(x));
+                    }
+                };
+            }
+        });
+    }
+
+    public Pipeline<X> take(final int enough) {
+        if (enough <= 0) {
+            return new Pipeline<X>(Iterables.<X>emptyIterable(), null, null, null);
+        }
+
+        return then(new Stage<X, X>() {
+            @Override
+            public Sink<X> wrap(final Sink<X> downstream) {
+                return new Sink<X>() {
+                    private int taken;
+
+                    @Override
+                    public boolean accept(X x) {
+                        return downstream.accept(x) && ++taken < enough;
+                    }
+                };
+            }
+        });
+    }
+
+    public Pipeline<String> mapString() {
+        return then(new Stage<X, String>() {
+            @Override
+            public Sink<X> wrap(final Sink<String> downstream) {
+                return new Sink<X>() {
+                    @Override
+                    public boolean accept(X x) {
+                        return downstream.accept(String.valueOf(x));
+                    }
+                };
+            }
+        });
+    }
+
+    public void forEach(final Function<X, Void> procedure) {
+        push(new Sink<X>() {
+            @Override
+            public boolean accept(X x) {
+                procedure.$(x);
+                return true;
+            }
+        });
+    }
+
+    public List<X> toList() {
+        final List<X> result = new ArrayList<>();
+        push(new Sink<X>() {
+            @Override
+            public boolean accept(X x) {
+                result.add(x);
+                return true;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Hands the whole pipeline to the outer walker and returns its result.
+     */
+    public <C> C into(Walking.Outer<X, C> outer) {
+        return outer.invoke(this);
+    }
+
+    private static final class PullingIterator<X> implements Iterator<X>, Sink<X> {
+        private final Iterator<?> it;
+        private final Sink<Object> sink;
+
+        private X next;
+        private boolean pending;
+        private boolean exhausted;
+
+        PullingIterator(Pipeline<X> pipeline) {
+            this.it = pipeline.elements != null ?
+                    Iterators.asIterator(pipeline.elements) :
+                    pipeline.source.iterator();
+            this.sink = pipeline.wrap(this);
+        }
+
+        @Override
+        public boolean accept(X x) {
+            next = x;
+            pending = true;
+
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!pending && !exhausted) {
+                if (!it.hasNext() || !sink.accept(it.next())) {
+                    exhausted = true;
+                }
+            }
+
+            return pending;
+        }
+
+        @Override
+        public X next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            X result = next;
+            next = null;
+            pending = false;
+
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Pulls the source one element at a time, still running each element through all stages in one call.
+     */
+    @Override
+    public Iterator<X> iterator() {
+        return new PullingIterator<X>(this);
+    }
+}
@@ -1,10 +1,10 @@
 package core;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public final class Ranges {
-    private static Iterable<Integer> rangeOfIntegers(final int from, final int to, final int step) {
-        // {:pre [step > 0]}
+    private static Iterable<Integer> unsizedRangeOfIntegers(final int from, final int to, final int step) {
         return new Iterable<Integer>() {
             @Override
             public Iterator<Integer> iterator() {
@@ -33,7 +33,7 @@ public final class Ranges {
         };
     }
 
-    private static Iterable<Long> rangeOfLongs(final long from, final long to, final long step) {
+    private static Iterable<Long> unsizedRangeOfLongs(final long from, final long to, final long step) {
         return new Iterable<Long>() {
             @Override
             public Iterator<Long> iterator() {
@@ -62,6 +62,309 @@ public final class Ranges {
         };
     }
 
+    public interface IntIterator {
+        boolean hasNext();
+
+        int nextInt();
+    }
+
+    public interface LongIterator {
+        boolean hasNext();
+
+        long nextLong();
+    }
+
+    public interface IntProcedure {
+        void invoke(int x);
+    }
+
+    public interface LongProcedure {
+        void invoke(long x);
+    }
+
+    /**
+     * Range elements are computed from their position, so any slice of a range is a range again.
+     */
+    abstract static class SizedRange<T> implements Splittable<T> {
+        final long lo;
+        final long hi;
+
+        SizedRange(long lo, long hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        abstract T at(long index);
+
+        abstract SizedRange<T> between(long lo, long hi);
+
+        @Override
+        public long size() {
+            return hi - lo;
+        }
+
+        @Override
+        public SizedRange<T> slice(long from, long to) {
+            if (from < 0 || to < from || size() < to) {
+                throw new IndexOutOfBoundsException(String.format("Invalid slice [%d, %d) of %d", from, to, size()));
+            }
+
+            return between(lo + from, lo + to);
+        }
+
+        void checkNotEmpty() {
+            if (hi <= lo) {
+                throw new NoSuchElementException("Empty range");
+            }
+        }
+
+        /**
+         * @return 0 + 1 + ... + (size() - 1), wrapping around like the equivalent loop would
+         */
+        long triangular() {
+            long size = size();
+            return size % 2 == 0 ? size / 2 * (size - 1) : (size - 1) / 2 * size;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private long index = lo;
+
+                @Override
+                public boolean hasNext() {
+                    return index < hi;
+                }
+
+                @Override
+                public T next() {
+                    if (hi <= index) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return at(index++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * Ints from, from + step, ... (or downwards), with primitive traversal next to the boxed one.
+     */
+    public static final class IntRange extends SizedRange<Integer> {
+        private final int from;
+        private final long delta;
+
+        IntRange(int from, long delta, long lo, long hi) {
+            super(lo, hi);
+            this.from = from;
+            this.delta = delta;
+        }
+
+        private int intAt(long index) {
+            return (int) (from + index * delta);
+        }
+
+        @Override
+        Integer at(long index) {
+            return intAt(index);
+        }
+
+        @Override
+        IntRange between(long lo, long hi) {
+            return new IntRange(from, delta, lo, hi);
+        }
+
+        @Override
+        public IntRange slice(long from, long to) {
+            return (IntRange) super.slice(from, to);
+        }
+
+        public IntIterator intIterator() {
+            return new IntIterator() {
+                private long index = lo;
+
+                @Override
+                public boolean hasNext() {
+                    return index < hi;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (hi <= index) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return intAt(index++);
+                }
+            };
+        }
+
+        public void forEachInt(IntProcedure procedure) {
+            for (long index = lo; index < hi; index++) {
+                procedure.invoke(intAt(index));
+            }
+        }
+
+        public long sum() {
+            return size() * intAt(lo) + triangular() * delta;
+        }
+
+        public int min() {
+            checkNotEmpty();
+            return delta < 0 ? intAt(hi - 1) : intAt(lo);
+        }
+
+        public int max() {
+            checkNotEmpty();
+            return delta < 0 ? intAt(lo) : intAt(hi - 1);
+        }
+    }
+
+    /**
+     * Longs from, from + step, ... below to, with primitive traversal next to the boxed one.
+     */
+    public static final class LongRange extends SizedRange<Long> {
+        private final long from;
+        private final long step;
+
+        LongRange(long from, long step, long lo, long hi) {
+            super(lo, hi);
+            this.from = from;
+            this.step = step;
+        }
+
+        private long longAt(long index) {
+            return from + index * step;
+        }
+
+        @Override
+        Long at(long index) {
+            return longAt(index);
+        }
+
+        @Override
+        LongRange between(long lo, long hi) {
+            return new LongRange(from, step, lo, hi);
+        }
+
+        @Override
+        public LongRange slice(long from, long to) {
+            return (LongRange) super.slice(from, to);
+        }
+
+        public LongIterator longIterator() {
+            return new LongIterator() {
+                private long index = lo;
+
+                @Override
+                public boolean hasNext() {
+                    return index < hi;
+                }
+
+                @Override
+                public long nextLong() {
+                    if (hi <= index) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return longAt(index++);
+                }
+            };
+        }
+
+        public void forEachLong(LongProcedure procedure) {
+            for (long index = lo; index < hi; index++) {
+                procedure.invoke(longAt(index));
+            }
+        }
+
+        /**
+         * Overflows the same way adding the elements up in a long would.
+         */
+        public long sum() {
+            return size() * longAt(lo) + triangular() * step;
+        }
+
+        public long min() {
+            checkNotEmpty();
+            return longAt(lo);
+        }
+
+        public long max() {
+            checkNotEmpty();
+            return longAt(hi - 1);
+        }
+    }
+
+    private static void checkStep(long step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid step: %d", step));
+        }
+    }
+
+    /**
+     * Counts down when to < from, like rangeOf(int.class, from, to, step).
+     */
+    public static IntRange intRange(int from, int to, int step) {
+        checkStep(step);
+
+        long distance = Math.abs((long) to - from);
+        return new IntRange(from, to < from ? -step : step, 0, (distance + step - 1) / step);
+    }
+
+    public static IntRange intRange(int from, int to) {
+        return intRange(from, to, 1);
+    }
+
+    public static IntRange intRange(int to) {
+        return intRange(0, to, 1);
+    }
+
+    public static LongRange longRange(long from, long to, long step) {
+        checkStep(step);
+        if (to <= from) {
+            return new LongRange(from, step, 0, 0);
+        }
+
+        if (to - from < 0) {
+            throw new IllegalArgumentException(String.format("Range [%d, %d) is too long", from, to));
+        }
+
+        return new LongRange(from, step, 0, (to - from - 1) / step + 1);
+    }
+
+    public static LongRange longRange(long from, long to) {
+        return longRange(from, to, 1);
+    }
+
+    public static LongRange longRange(long to) {
+        return longRange(0, to, 1);
+    }
+
+    private static Iterable<Integer> rangeOfIntegers(int from, int to, int step) {
+        // {:pre [step > 0]}
+        if (step <= 0) {
+            return unsizedRangeOfIntegers(from, to, step);
+        }
+
+        return intRange(from, to, step);
+    }
+
+    private static Iterable<Long> rangeOfLongs(long from, long to, long step) {
+        // distances beyond Long.MAX_VALUE cannot be sized
+        if (step <= 0 || (from < to && to - from < 0)) {
+            return unsizedRangeOfLongs(from, to, step);
+        }
+
+        return longRange(from, to, step);
+    }
+
     private static <T> T unsupportedOperationForType(Class<?> type) {
         throw new UnsupportedOperationException(String.format("range() is not supported for %s", type));
     }
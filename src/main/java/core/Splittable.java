@@ -0,0 +1,13 @@
+package core;
+
+/**
+ * An Iterable of known size that can hand out independent slices of itself, so it can be traversed in parallel.
+ */
+public interface Splittable<X> extends Iterable<X> {
+    long size();
+
+    /**
+     * @return the elements at positions [from, to), 0 <= from <= to <= size()
+     */
+    Splittable<X> slice(long from, long to);
+}
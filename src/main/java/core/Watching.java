@@ -1,151 +1,2124 @@
 package core;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import static java.util.Arrays.asList;
 
-public final class Watching {
-    private static <T> List<T> cons(T element, List<T> list) {
-        List<T> result = new LinkedList<>();
-        result.add(element);
-        result.addAll(list);
+public final class Watching {
+    private static <T> List<T> cons(T element, List<T> list) {
+        List<T> result = new LinkedList<>();
+        result.add(element);
+        result.addAll(list);
+
+        return result;
+    }
+
+
+    private static List<WatchEvent.Kind<Path>> allWatchEvents() {
+        List<WatchEvent.Kind<Path>> result = new LinkedList<>();
+        Collections.addAll(result,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        return result;
+    }
+
+    private static void ensureClosed(WatchService watchService) {
+        try {
+            watchService.close();
+        } catch (IOException ignore) {
+            /*NOP*/
+        }
+    }
+
+    private static String formatEventType(WatchEvent<?> event) {
+        WatchEvent.Kind<?> kind = event.kind();
+
+        if (StandardWatchEventKinds.OVERFLOW.equals(kind)) {
+            return "invalidate";
+        } else if (StandardWatchEventKinds.ENTRY_CREATE.equals(kind)) {
+            return "create";
+        } else if (StandardWatchEventKinds.ENTRY_DELETE.equals(kind)) {
+            return "delete";
+        } else if (StandardWatchEventKinds.ENTRY_MODIFY.equals(kind)) {
+            return "modify";
+        }
+
+        return "invalidate";
+    }
+
+    private static boolean isOverflowEvent(WatchEvent<?> event) {
+        return StandardWatchEventKinds.OVERFLOW.equals(event.kind());
+    }
+
+    private static Map.Entry<String, Map.Entry<Path, Path>> event(String type, Path directory, Path name) {
+        return new AbstractMap.SimpleImmutableEntry<String, Map.Entry<Path, Path>>(type,
+                new AbstractMap.SimpleImmutableEntry<>(directory, name));
+    }
+
+    private static final Path NO_NAME = Paths.get("");
+
+    /**
+     * The events of one watch key poll, kept in parallel arrays; iterators over batches hand out the same instance
+     * again and again, so its contents are only valid until the next batch is requested.
+     */
+    public static final class Batch implements Iterable<Map.Entry<String, Map.Entry<Path, Path>>> {
+        private String[] types = new String[16];
+        private Path[] directories = new Path[16];
+        private Path[] names = new Path[16];
+        private int size;
+
+        void clear() {
+            Arrays.fill(directories, 0, size, null);
+            Arrays.fill(names, 0, size, null);
+            size = 0;
+        }
+
+        void add(String type, Path directory, Path name) {
+            if (size == types.length) {
+                types = Arrays.copyOf(types, size * 2);
+                directories = Arrays.copyOf(directories, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+            }
+
+            types[size] = type;
+            directories[size] = directory;
+            names[size] = name;
+            size++;
+        }
+
+        void addAll(Batch batch) {
+            for (int index = 0; index < batch.size; index++) {
+                add(batch.types[index], batch.directories[index], batch.names[index]);
+            }
+        }
+
+        private void ensureIndex(int index) {
+            if (index < 0 || size <= index) {
+                throw new IndexOutOfBoundsException(String.format("Index: %d, size: %d", index, size));
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public String type(int index) {
+            ensureIndex(index);
+            return types[index];
+        }
+
+        public Path directory(int index) {
+            ensureIndex(index);
+            return directories[index];
+        }
+
+        public Path name(int index) {
+            ensureIndex(index);
+            return names[index];
+        }
+
+        public Path path(int index) {
+            ensureIndex(index);
+            return directories[index].resolve(names[index]);
+        }
+
+        public Map.Entry<String, Map.Entry<Path, Path>> get(int index) {
+            ensureIndex(index);
+            return event(types[index], directories[index], names[index]);
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, Map.Entry<Path, Path>>> iterator() {
+            return new Iterator<Map.Entry<String, Map.Entry<Path, Path>>>() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < size;
+                }
+
+                @Override
+                public Map.Entry<String, Map.Entry<Path, Path>> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return get(index++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder("Batch[");
+            for (int index = 0; index < size; index++) {
+                if (0 < index) {
+                    result.append(", ");
+                }
+
+                result.append(types[index]).append(' ').append(directories[index].resolve(names[index]));
+            }
+
+            return result.append(']').toString();
+        }
+    }
+
+    /**
+     * Observes a watch; pass one with the "listener" option. Callbacks arrive on the threads that take events and
+     * run callbacks, so implementations have to be thread-safe and cheap. Durations are in nanoseconds.
+     */
+    public interface Listener {
+        void eventsTaken(Batch batch);
+
+        void overflowed(Path directory);
+
+        void keyInvalidated(Path directory);
+
+        /**
+         * Reports how long one callback ran and how long after the events were taken it finished; with dispatching or
+         * coalescing these cover the hand-off only.
+         */
+        void callbackCompleted(long latency, long lag);
+    }
+
+    public interface MetricsMXBean {
+        long getCreateEvents();
+
+        long getModifyEvents();
+
+        long getDeleteEvents();
+
+        long getInvalidateEvents();
+
+        double getCreateEventsPerSecond();
+
+        double getModifyEventsPerSecond();
+
+        double getDeleteEventsPerSecond();
+
+        long getOverflows();
+
+        long getInvalidatedKeys();
+
+        long getCallbacks();
+
+        double getCallbackLatencyMedianMillis();
+
+        double getCallbackLatency99thPercentileMillis();
+
+        double getLagMedianMillis();
+
+        double getLag99thPercentileMillis();
+    }
+
+    /**
+     * Counts events by type, overflows and invalidated keys, keeps event rates over the last ten seconds and latency
+     * percentiles over the last 1024 callbacks; {@link #register(String)} exposes it as a platform MXBean.
+     */
+    public static final class Metrics implements Listener, MetricsMXBean, Closeable {
+        private static final int RATE_WINDOW = 10;
+        private static final int SAMPLES = 1024;
+
+        private static final class Rate {
+            private final AtomicLong count = new AtomicLong();
+            private final AtomicLongArray buckets = new AtomicLongArray(RATE_WINDOW);
+            private final AtomicLongArray seconds = new AtomicLongArray(RATE_WINDOW);
+
+            void add(long delta, long second) {
+                int slot = (int) (second % RATE_WINDOW);
+
+                long previous = seconds.get(slot);
+                if (previous != second && seconds.compareAndSet(slot, previous, second)) {
+                    buckets.set(slot, 0);
+                }
+
+                buckets.addAndGet(slot, delta);
+                count.addAndGet(delta);
+            }
+
+            double perSecond(long second) {
+                long result = 0;
+                for (int slot = 0; slot < RATE_WINDOW; slot++) {
+                    long bucket = seconds.get(slot);
+
+                    if (second - RATE_WINDOW < bucket && bucket <= second) {
+                        result += buckets.get(slot);
+                    }
+                }
+
+                return (double) result / RATE_WINDOW;
+            }
+        }
+
+        private static final class Samples {
+            private final long[] values = new long[SAMPLES];
+            private long count;
+
+            synchronized void add(long value) {
+                values[(int) (count++ % SAMPLES)] = value;
+            }
+
+            synchronized long percentile(double percentile) {
+                int size = (int) Math.min(count, SAMPLES);
+                if (size == 0) {
+                    return 0;
+                }
+
+                long[] sorted = Arrays.copyOf(values, size);
+                Arrays.sort(sorted);
+
+                return sorted[Math.max(0, (int) Math.ceil(percentile / 100 * size) - 1)];
+            }
+        }
+
+        private final Rate creates = new Rate();
+        private final Rate modifies = new Rate();
+        private final Rate deletes = new Rate();
+        private final AtomicLong invalidates = new AtomicLong();
+
+        private final AtomicLong overflows = new AtomicLong();
+        private final AtomicLong invalidatedKeys = new AtomicLong();
+
+        private final AtomicLong callbacks = new AtomicLong();
+        private final Samples latencies = new Samples();
+        private final Samples lags = new Samples();
+
+        private ObjectName name;
+
+        private static long currentSecond() {
+            return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        }
+
+        private static double millis(long nanoseconds) {
+            return nanoseconds / 1e6;
+        }
+
+        @Override
+        public void eventsTaken(Batch batch) {
+            long created = 0;
+            long modified = 0;
+            long deleted = 0;
+            for (int index = 0; index < batch.size(); index++) {
+                switch (batch.type(index)) {
+                    case "create":
+                        created++;
+                        break;
+                    case "modify":
+                        modified++;
+                        break;
+                    case "delete":
+                        deleted++;
+                        break;
+                    default:
+                        invalidates.incrementAndGet();
+                }
+            }
+
+            long second = currentSecond();
+            creates.add(created, second);
+            modifies.add(modified, second);
+            deletes.add(deleted, second);
+        }
+
+        @Override
+        public void overflowed(Path directory) {
+            overflows.incrementAndGet();
+        }
+
+        @Override
+        public void keyInvalidated(Path directory) {
+            invalidatedKeys.incrementAndGet();
+        }
+
+        @Override
+        public void callbackCompleted(long latency, long lag) {
+            callbacks.incrementAndGet();
+            latencies.add(latency);
+            lags.add(lag);
+        }
+
+        @Override
+        public long getCreateEvents() {
+            return creates.count.get();
+        }
+
+        @Override
+        public long getModifyEvents() {
+            return modifies.count.get();
+        }
+
+        @Override
+        public long getDeleteEvents() {
+            return deletes.count.get();
+        }
+
+        @Override
+        public long getInvalidateEvents() {
+            return invalidates.get();
+        }
+
+        @Override
+        public double getCreateEventsPerSecond() {
+            return creates.perSecond(currentSecond());
+        }
+
+        @Override
+        public double getModifyEventsPerSecond() {
+            return modifies.perSecond(currentSecond());
+        }
+
+        @Override
+        public double getDeleteEventsPerSecond() {
+            return deletes.perSecond(currentSecond());
+        }
+
+        @Override
+        public long getOverflows() {
+            return overflows.get();
+        }
+
+        @Override
+        public long getInvalidatedKeys() {
+            return invalidatedKeys.get();
+        }
+
+        @Override
+        public long getCallbacks() {
+            return callbacks.get();
+        }
+
+        /** Callback latency at the given percentile, in nanoseconds. */
+        public long callbackLatency(double percentile) {
+            return latencies.percentile(percentile);
+        }
+
+        /** Time from taking the events to finishing their callback at the given percentile, in nanoseconds. */
+        public long lag(double percentile) {
+            return lags.percentile(percentile);
+        }
+
+        @Override
+        public double getCallbackLatencyMedianMillis() {
+            return millis(callbackLatency(50));
+        }
+
+        @Override
+        public double getCallbackLatency99thPercentileMillis() {
+            return millis(callbackLatency(99));
+        }
+
+        @Override
+        public double getLagMedianMillis() {
+            return millis(lag(50));
+        }
+
+        @Override
+        public double getLag99thPercentileMillis() {
+            return millis(lag(99));
+        }
+
+        /** Registers these metrics with the platform MBean server as core:type=Watching,name=&lt;name&gt;. */
+        public synchronized Metrics register(String name) {
+            try {
+                ObjectName objectName = new ObjectName(String.format("core:type=Watching,name=%s",
+                        ObjectName.quote(name)));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+
+                this.name = objectName;
+                return this;
+            } catch (JMException exception) {
+                throw new RuntimeException(exception);
+            }
+        }
+
+        /** Unregisters these metrics from the platform MBean server, if they were registered. */
+        @Override
+        public synchronized void close() {
+            if (name == null) {
+                return;
+            }
+
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException exception) {
+                throw new RuntimeException(exception);
+            } finally {
+                name = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Metrics(create: %d, modify: %d, delete: %d, overflows: %d, invalidated keys: %d, " +
+                            "callbacks: %d, latency p99: %.3fms, lag p99: %.3fms)",
+                    getCreateEvents(), getModifyEvents(), getDeleteEvents(), getOverflows(), getInvalidatedKeys(),
+                    getCallbacks(), getCallbackLatency99thPercentileMillis(), getLag99thPercentileMillis());
+        }
+    }
+
+    public static Metrics metrics() {
+        return new Metrics();
+    }
+
+    private static Listener listener(Object... options) {
+        return Maps.get(options, "listener", Listener.class, "default", null);
+    }
+
+    private static final class EntryState {
+        private final boolean directory;
+        private final long size;
+        private final long modified;
+
+        EntryState(boolean directory, long size, long modified) {
+            this.directory = directory;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        EntryState(BasicFileAttributes attributes) {
+            this(attributes.isDirectory(), attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+
+        boolean isDirectory() {
+            return directory;
+        }
+
+        /** Directories are compared by type only; their size and mtime change without an event in the parent. */
+        boolean isSameAs(EntryState other) {
+            return directory == other.directory && (directory || size == other.size && modified == other.modified);
+        }
+    }
+
+    private static EntryState stat(Path path) {
+        try {
+            return new EntryState(Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    private static Map<Path, EntryState> scan(Path directory) throws IOException {
+        Map<Path, EntryState> result = new HashMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                EntryState state = stat(entry);
+
+                if (state != null) {
+                    result.put(entry.getFileName(), state);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /** Package-private, so that tests can make the registration of chosen directories fail. */
+    static volatile Predicate<Path> failingRegistrations;
+
+    private static final class RegistrationTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final DirectoryWatcher watcher;
+        private final Path directory;
+        private final boolean root;
+        private final Queue<Map.Entry<String, Map.Entry<Path, Path>>> discovered;
+
+        RegistrationTask(DirectoryWatcher watcher, Path directory, boolean root,
+                         Queue<Map.Entry<String, Map.Entry<Path, Path>>> discovered) {
+            this.watcher = watcher;
+            this.directory = directory;
+            this.root = root;
+            this.discovered = discovered;
+        }
+
+        @Override
+        protected void compute() {
+            List<RegistrationTask> subtasks = new ArrayList<>();
+            try {
+                Predicate<Path> failing = failingRegistrations;
+                if (failing != null && failing.$(directory)) {
+                    throw new AccessDeniedException(directory.toString());
+                }
+
+                Map<Path, EntryState> entries = watcher.register(directory);
+
+                for (Map.Entry<Path, EntryState> entry : entries.entrySet()) {
+                    if (discovered != null) {
+                        discovered.add(event("create", directory, entry.getKey()));
+                    }
+
+                    if (entry.getValue().isDirectory()) {
+                        subtasks.add(new RegistrationTask(watcher, directory.resolve(entry.getKey()), false,
+                                discovered));
+                    }
+                }
+            } catch (NoSuchFileException | NotDirectoryException exception) {
+                if (root) {
+                    throw new RuntimeException(exception);
+                }
+            } catch (IOException exception) {
+                if (discovered == null) {
+                    throw new RuntimeException(exception);
+                }
+
+                // A created directory that cannot be watched, e.g. past the watch limit or without read access
+                discovered.add(event("invalidate", directory, NO_NAME));
+            }
+
+            invokeAll(subtasks);
+        }
+    }
+
+    /**
+     * A WatchService and, when shared, the directory watchers each of its keys belongs to. A shared registry registers
+     * every directory for all event kinds, since registering a directory again replaces its kinds, and leaves the
+     * filtering to the watchers; a key is cancelled once its last watcher lets go of it.
+     */
+    private static final class WatchRegistry implements Closeable {
+        private static final WatchEvent.Kind<?>[] ALL_EVENTS = {
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY};
+
+        private final WatchService service;
+        private final boolean shared;
+        private final Map<WatchKey, List<DirectoryWatcher>> owners = new HashMap<>();
+
+        WatchRegistry(boolean shared) {
+            this.shared = shared;
+
+            try {
+                this.service = FileSystems.getDefault().newWatchService();
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+        }
+
+        WatchKey register(Path directory, WatchEvent.Kind<?>[] events, DirectoryWatcher owner) throws IOException {
+            if (!shared) {
+                return directory.register(service, events);
+            }
+
+            synchronized (owners) {
+                WatchKey key = directory.register(service, ALL_EVENTS);
+
+                List<DirectoryWatcher> watchers = owners.get(key);
+                if (watchers == null) {
+                    watchers = new CopyOnWriteArrayList<>();
+                    owners.put(key, watchers);
+                }
+
+                if (!watchers.contains(owner)) {
+                    watchers.add(owner);
+                }
+
+                return key;
+            }
+        }
+
+        void unregister(WatchKey key, DirectoryWatcher owner) {
+            synchronized (owners) {
+                List<DirectoryWatcher> watchers = owners.get(key);
+
+                if (watchers != null && watchers.remove(owner) && watchers.isEmpty()) {
+                    owners.remove(key);
+                    key.cancel();
+                }
+            }
+        }
+
+        /** Hands the events of a signalled key to every watcher registered for it and returns those watchers. */
+        List<DirectoryWatcher> dispatch(WatchKey key) {
+            List<WatchEvent<?>> events = key.pollEvents();
+            boolean valid = key.reset();
+
+            List<DirectoryWatcher> result;
+            synchronized (owners) {
+                result = valid ? owners.get(key) : owners.remove(key);
+            }
+
+            if (result == null) {
+                return Collections.emptyList();
+            }
+
+            for (DirectoryWatcher owner : result) {
+                Batch batch = new Batch();
+                owner.process(key, events, valid, batch);
+
+                synchronized (owner.selected) {
+                    owner.selected.addAll(batch);
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        public void close() {
+            ensureClosed(service);
+        }
+    }
+
+    private static final class DirectoryWatcher implements EventSource {
+        private final WatchRegistry registry;
+        private final boolean ownsRegistry;
+        private final Set<WatchEvent.Kind<?>> desiredEvents;
+        private final WatchEvent.Kind<?>[] registeredEvents;
+        private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+
+        private final boolean recursive;
+        private final ForkJoinPool pool;
+
+        private final Map<Path, Map<Path, EntryState>> snapshots;
+
+        /** Where a shared registry delivers this watcher's events, guarded by itself. */
+        final Batch selected = new Batch();
+
+        private final Listener listener;
+
+        private volatile boolean closed;
+
+        DirectoryWatcher(List<WatchEvent.Kind<Path>> events, Collection<Path> paths, WatchRegistry registry,
+                         Object... options) {
+            this.desiredEvents = new HashSet<WatchEvent.Kind<?>>(events.isEmpty() ? allWatchEvents() : events);
+            this.recursive = Maps.get(options, "recursive?", Boolean.class, "default", false);
+            this.listener = listener(options);
+            this.snapshots = Maps.get(options, "recover-overflow?", Boolean.class, "default", false) ?
+                    new ConcurrentHashMap<Path, Map<Path, EntryState>>() : null;
+
+            Set<WatchEvent.Kind<?>> registered = new HashSet<>(desiredEvents);
+            if (recursive) {
+                registered.add(StandardWatchEventKinds.ENTRY_CREATE);
+            }
+            this.registeredEvents = registered.toArray(new WatchEvent.Kind<?>[registered.size()]);
+
+            this.ownsRegistry = registry == null;
+            this.registry = ownsRegistry ? new WatchRegistry(false) : registry;
+
+            if (!recursive) {
+                this.pool = null;
+
+                try {
+                    for (Path path : paths) {
+                        register(path);
+                    }
+                } catch (IOException | RuntimeException exception) {
+                    close();
+                    throw exception instanceof RuntimeException ?
+                            (RuntimeException) exception : new RuntimeException(exception);
+                }
+
+                return;
+            }
+
+            this.pool = new ForkJoinPool(Maps.get(options, "parallelism", Integer.class, "default",
+                    Runtime.getRuntime().availableProcessors()));
+
+            try {
+                List<RegistrationTask> tasks = new ArrayList<>();
+                for (Path path : paths) {
+                    tasks.add(new RegistrationTask(this, path, true, null));
+                }
+
+                for (RegistrationTask task : tasks) {
+                    pool.execute(task);
+                }
+
+                for (RegistrationTask task : tasks) {
+                    task.join();
+                }
+            } catch (RuntimeException exception) {
+                close();
+                throw exception;
+            }
+        }
+
+        /**
+         * Registers the directory and returns its entries, listed after registration so that nothing created in
+         * between goes unnoticed; the listing is only taken when it is needed.
+         */
+        Map<Path, EntryState> register(Path directory) throws IOException {
+            keys.put(registry.register(directory, registeredEvents, this), directory);
+
+            if (!recursive && snapshots == null) {
+                return Collections.emptyMap();
+            }
+
+            Map<Path, EntryState> result = scan(directory);
+            if (snapshots != null) {
+                snapshots.put(directory, result);
+            }
+
+            return result;
+        }
+
+        private Queue<Map.Entry<String, Map.Entry<Path, Path>>> registerCreated(Path directory) {
+            Queue<Map.Entry<String, Map.Entry<Path, Path>>> discovered = new ConcurrentLinkedQueue<>();
+            try {
+                pool.invoke(new RegistrationTask(this, directory, false, discovered));
+            } catch (RejectedExecutionException | CancellationException ignore) {
+                /* The watcher has been closed meanwhile. */
+            }
+
+            return discovered;
+        }
+
+        private boolean isDesired(String eventType) {
+            return desiredEvents.contains(mapToWatchEventKind(eventType));
+        }
+
+        private void created(Path directory, Path name, Batch batch) {
+            Path created = directory.resolve(name);
+
+            if (recursive && Files.isDirectory(created, LinkOption.NOFOLLOW_LINKS)) {
+                Queue<Map.Entry<String, Map.Entry<Path, Path>>> replayed = registerCreated(created);
+
+                for (Map.Entry<String, Map.Entry<Path, Path>> event : replayed) {
+                    if ("invalidate".equals(event.getKey()) || isDesired("create")) {
+                        batch.add(event.getKey(), event.getValue().getKey(), event.getValue().getValue());
+                    }
+                }
+            }
+        }
+
+        private void track(Path directory, WatchEvent<?> event) {
+            Map<Path, EntryState> snapshot = snapshots.get(directory);
+            if (snapshot == null) {
+                return;
+            }
+
+            Path name = (Path) event.context();
+            EntryState state = StandardWatchEventKinds.ENTRY_DELETE.equals(event.kind()) ?
+                    null : stat(directory.resolve(name));
+
+            if (state == null) {
+                snapshot.remove(name);
+            } else {
+                snapshot.put(name, state);
+            }
+        }
+
+        /** Rescans the directory after an overflow and reports how it differs from the last known snapshot. */
+        private void recover(Path directory, Batch batch) {
+            Map<Path, EntryState> previous = snapshots.get(directory);
+            if (previous == null) {
+                previous = Collections.emptyMap();
+            }
+
+            Map<Path, EntryState> current;
+            try {
+                current = scan(directory);
+            } catch (IOException exception) {
+                current = Collections.emptyMap();
+            }
+            snapshots.put(directory, current);
+
+            for (Map.Entry<Path, EntryState> entry : current.entrySet()) {
+                EntryState before = previous.get(entry.getKey());
+
+                if (before == null || before.isDirectory() != entry.getValue().isDirectory()) {
+                    if (isDesired("create")) {
+                        batch.add("create", directory, entry.getKey());
+                    }
+
+                    created(directory, entry.getKey(), batch);
+                } else if (!before.isSameAs(entry.getValue()) && isDesired("modify")) {
+                    batch.add("modify", directory, entry.getKey());
+                }
+            }
+
+            for (Path name : previous.keySet()) {
+                if (!current.containsKey(name) && isDesired("delete")) {
+                    batch.add("delete", directory, name);
+                }
+            }
+        }
+
+        void process(WatchKey key, List<WatchEvent<?>> events, boolean valid, Batch batch) {
+            Path directory = keys.get(key);
+            if (directory == null) {
+                return;
+            }
+
+            for (WatchEvent<?> event : events) {
+                if (isOverflowEvent(event)) {
+                    if (listener != null) {
+                        listener.overflowed(directory);
+                    }
+
+                    if (snapshots != null) {
+                        recover(directory, batch);
+                    } else {
+                        batch.add(formatEventType(event), directory, NO_NAME);
+                    }
+
+                    continue;
+                }
+
+                if (desiredEvents.contains(event.kind())) {
+                    batch.add(formatEventType(event), directory, (Path) event.context());
+                }
+
+                if (snapshots != null) {
+                    track(directory, event);
+                }
+
+                if (StandardWatchEventKinds.ENTRY_CREATE.equals(event.kind())) {
+                    created(directory, (Path) event.context(), batch);
+                }
+            }
+
+            if (!valid) {
+                keys.remove(key);
+
+                if (listener != null) {
+                    listener.keyInvalidated(directory);
+                }
+
+                if (snapshots != null) {
+                    snapshots.remove(directory);
+                }
+            }
+        }
+
+        @Override
+        public boolean poll(Batch batch, long timeout) {
+            batch.clear();
+
+            long deadline = System.nanoTime() + timeout;
+            while (!keys.isEmpty()) {
+                WatchKey key;
+                try {
+                    key = timeout < 0 ?
+                            registry.service.take() :
+                            registry.service.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                } catch (ClosedWatchServiceException exception) {
+                    return false;
+                }
+
+                if (key == null) {
+                    return true;
+                }
+
+                process(key, key.pollEvents(), key.reset(), batch);
+                if (!batch.isEmpty()) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed && !keys.isEmpty();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+
+            if (ownsRegistry) {
+                registry.close();
+            } else {
+                for (WatchKey key : keys.keySet()) {
+                    registry.unregister(key, this);
+                }
+            }
+            keys.clear();
+
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private interface EventSource extends Closeable {
+        /**
+         * Waits up to the timeout in nanoseconds, or indefinitely when it is negative, for events and refills the
+         * batch with them; an empty batch means the timeout elapsed. Returns false once the watch is over, because
+         * nothing is left to watch, the source was closed or the current thread was interrupted.
+         */
+        boolean poll(Batch batch, long timeout);
+
+        boolean isOpen();
+
+        @Override
+        void close();
+    }
+
+    private static final class DirectoryState {
+        private final long modified;
+        private final long listed;
+        private final Map<Path, EntryState> entries;
+
+        DirectoryState(long modified, long listed, Map<Path, EntryState> entries) {
+            this.modified = modified;
+            this.listed = listed;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * Finds changes by scanning instead of relying on native events, for file systems that deliver none. A directory
+     * is only listed again when its mtime moved (or was too close to the previous listing to be trusted); otherwise
+     * its known entries are merely checked for modifications, and only if modifications are watched at all.
+     */
+    private static final class PollingWatcher implements EventSource {
+        private static final long MODIFIED_TIME_GRANULARITY = 2000;
+
+        private final Set<WatchEvent.Kind<?>> desiredEvents;
+        private final boolean recursive;
+        private final long interval;
+
+        private final List<Path> roots = new LinkedList<>();
+        private final Map<Path, DirectoryState> directories = new HashMap<>();
+
+        private long deadline;
+        private boolean closed;
+
+        PollingWatcher(List<WatchEvent.Kind<Path>> events, Collection<Path> paths, long interval, Object... options) {
+            this.desiredEvents = new HashSet<WatchEvent.Kind<?>>(events.isEmpty() ? allWatchEvents() : events);
+            this.recursive = Maps.get(options, "recursive?", Boolean.class, "default", false);
+            this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+
+            for (Path path : paths) {
+                try {
+                    directories.put(path, list(path));
+                } catch (IOException exception) {
+                    throw new RuntimeException(exception);
+                }
+
+                roots.add(path);
+                if (recursive) {
+                    trackChildren(path, null);
+                }
+            }
+
+            this.deadline = System.nanoTime() + this.interval;
+        }
+
+        private static DirectoryState list(Path directory) throws IOException {
+            long listed = System.currentTimeMillis();
+            BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class);
+            if (!attributes.isDirectory()) {
+                throw new NotDirectoryException(directory.toString());
+            }
+
+            return new DirectoryState(attributes.lastModifiedTime().toMillis(), listed, scan(directory));
+        }
+
+        private boolean isDesired(String eventType) {
+            return desiredEvents.contains(mapToWatchEventKind(eventType));
+        }
+
+        private void emit(Batch batch, String type, Path directory, Path name) {
+            if (batch != null && isDesired(type)) {
+                batch.add(type, directory, name);
+            }
+        }
+
+        private void trackChildren(Path directory, Batch batch) {
+            for (Map.Entry<Path, EntryState> entry : directories.get(directory).entries.entrySet()) {
+                if (entry.getValue().isDirectory()) {
+                    track(directory.resolve(entry.getKey()), batch);
+                }
+            }
+        }
+
+        /** Starts tracking a new directory, reporting its entries as created unless the batch is null. */
+        private void track(Path directory, Batch batch) {
+            DirectoryState state;
+            try {
+                state = list(directory);
+            } catch (IOException exception) {
+                return;
+            }
+
+            directories.put(directory, state);
+            for (Path name : state.entries.keySet()) {
+                emit(batch, "create", directory, name);
+            }
+
+            if (recursive) {
+                trackChildren(directory, batch);
+            }
+        }
+
+        /** Stops tracking a vanished directory, reporting its entries as deleted, innermost first. */
+        private void untrack(Path directory, Batch batch) {
+            DirectoryState state = directories.remove(directory);
+            if (state == null) {
+                return;
+            }
+
+            for (Map.Entry<Path, EntryState> entry : state.entries.entrySet()) {
+                if (entry.getValue().isDirectory()) {
+                    untrack(directory.resolve(entry.getKey()), batch);
+                }
+
+                emit(batch, "delete", directory, entry.getKey());
+            }
+        }
+
+        private void relist(Path directory, DirectoryState previous, long modified, Batch batch) throws IOException {
+            long listed = System.currentTimeMillis();
+            Map<Path, EntryState> current = scan(directory);
+
+            for (Map.Entry<Path, EntryState> entry : previous.entries.entrySet()) {
+                EntryState after = current.get(entry.getKey());
+
+                if (after == null || after.isDirectory() != entry.getValue().isDirectory()) {
+                    if (entry.getValue().isDirectory()) {
+                        untrack(directory.resolve(entry.getKey()), batch);
+                    }
+
+                    emit(batch, "delete", directory, entry.getKey());
+                }
+            }
+
+            directories.put(directory, new DirectoryState(modified, listed, current));
+
+            for (Map.Entry<Path, EntryState> entry : current.entrySet()) {
+                EntryState before = previous.entries.get(entry.getKey());
+
+                if (before == null || before.isDirectory() != entry.getValue().isDirectory()) {
+                    emit(batch, "create", directory, entry.getKey());
+
+                    if (recursive && entry.getValue().isDirectory()) {
+                        track(directory.resolve(entry.getKey()), batch);
+                    }
+                } else if (!before.isSameAs(entry.getValue())) {
+                    emit(batch, "modify", directory, entry.getKey());
+                }
+            }
+        }
+
+        private void restat(Path directory, DirectoryState state, Batch batch) {
+            for (Map.Entry<Path, EntryState> entry : state.entries.entrySet()) {
+                if (entry.getValue().isDirectory()) {
+                    continue;
+                }
+
+                EntryState after = stat(directory.resolve(entry.getKey()));
+                if (after != null && !after.isSameAs(entry.getValue())) {
+                    entry.setValue(after);
+                    emit(batch, "modify", directory, entry.getKey());
+                }
+            }
+        }
+
+        private void rescan(Path directory, Batch batch) {
+            DirectoryState previous = directories.get(directory);
+            if (previous == null) {
+                return;
+            }
+
+            try {
+                long modified = Files.readAttributes(directory, BasicFileAttributes.class)
+                        .lastModifiedTime().toMillis();
+
+                if (modified != previous.modified || previous.listed - modified < MODIFIED_TIME_GRANULARITY) {
+                    relist(directory, previous, modified, batch);
+                } else if (isDesired("modify")) {
+                    restat(directory, previous, batch);
+                }
+            } catch (IOException exception) {
+                untrack(directory, batch);
+                return;
+            }
+
+            if (recursive) {
+                List<Path> children = new ArrayList<>();
+                for (Map.Entry<Path, EntryState> entry : directories.get(directory).entries.entrySet()) {
+                    if (entry.getValue().isDirectory()) {
+                        children.add(directory.resolve(entry.getKey()));
+                    }
+                }
+
+                for (Path child : children) {
+                    rescan(child, batch);
+                }
+            }
+        }
+
+        @Override
+        public boolean poll(Batch batch, long timeout) {
+            batch.clear();
+
+            long end = System.nanoTime() + timeout;
+            while (isOpen()) {
+                try {
+                    synchronized (this) {
+                        for (long remaining = deadline - System.nanoTime(); !closed && 0 < remaining;
+                             remaining = deadline - System.nanoTime()) {
+                            if (0 <= timeout && end - System.nanoTime() <= 0) {
+                                return true;
+                            }
+
+                            TimeUnit.NANOSECONDS.timedWait(this,
+                                    timeout < 0 ? remaining : Math.min(remaining, end - System.nanoTime()));
+                        }
+
+                        if (closed) {
+                            return false;
+                        }
+                    }
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+
+                deadline = System.nanoTime() + interval;
+                for (Iterator<Path> iterator = roots.iterator(); iterator.hasNext(); ) {
+                    Path root = iterator.next();
+
+                    rescan(root, batch);
+                    if (!directories.containsKey(root)) {
+                        iterator.remove();
+                    }
+                }
+
+                if (!batch.isEmpty()) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return !closed && !roots.isEmpty();
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * One WatchService and one thread for every shared subscription in the process. The registry counts the
+     * subscriptions registered for each directory key and cancels the key when the last one closes; the thread fans
+     * each signalled key out to the subscriptions' queues. The hub lock only guards the subscription map: registering
+     * directories, scanning them and closing watchers all happen outside it.
+     */
+    private static final class WatchHub implements Runnable {
+        private static final WatchHub INSTANCE = new WatchHub();
+
+        private final WatchRegistry registry = new WatchRegistry(true);
+        private final Map<DirectoryWatcher, HubSubscription> subscriptions = new HashMap<>();
+        private Thread pump;
+
+        HubSubscription subscribe(List<WatchEvent.Kind<Path>> events, Collection<Path> paths, Object... options) {
+            DirectoryWatcher watcher = new DirectoryWatcher(events, paths, registry, options);
+            HubSubscription result = new HubSubscription(this, watcher,
+                    Maps.get(options, "queue-capacity", Integer.class, "default", 1024));
+
+            synchronized (this) {
+                subscriptions.put(watcher, result);
+
+                if (pump == null) {
+                    pump = new Thread(this, "watch hub");
+                    pump.setDaemon(true);
+                    pump.start();
+                }
+            }
+
+            result.deliver();
+            return result;
+        }
+
+        void unsubscribe(DirectoryWatcher watcher) {
+            synchronized (this) {
+                subscriptions.remove(watcher);
+            }
+
+            watcher.close();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = registry.service.take();
+                } catch (InterruptedException exception) {
+                    return;
+                }
+
+                for (DirectoryWatcher owner : registry.dispatch(key)) {
+                    HubSubscription subscription;
+                    synchronized (this) {
+                        subscription = subscriptions.get(owner);
+                    }
+
+                    if (subscription != null) {
+                        subscription.deliver();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The events of one watcher of the hub, queued for its consumer. A full queue does not hold the hub back: the
+     * batch is dropped and every directory it touched is reported with an "invalidate" event once the consumer has
+     * caught up.
+     */
+    private static final class HubSubscription implements EventSource {
+        private static final Batch END = new Batch();
+
+        private final WatchHub hub;
+        private final DirectoryWatcher watcher;
+        private final BlockingQueue<Batch> queue;
+
+        /** The directories of dropped batches, guarded by the subscription. */
+        private final Set<Path> invalidated = new LinkedHashSet<>();
+
+        private volatile boolean ended;
+        private volatile boolean over;
+
+        HubSubscription(WatchHub hub, DirectoryWatcher watcher, int capacity) {
+            this.hub = hub;
+            this.watcher = watcher;
+            this.queue = new LinkedBlockingQueue<>(capacity);
+        }
+
+        /** Moves the watcher's pending events to the queue; called by the hub thread and once by the subscriber. */
+        void deliver() {
+            Batch batch = null;
+            synchronized (watcher.selected) {
+                if (!watcher.selected.isEmpty()) {
+                    batch = new Batch();
+                    batch.addAll(watcher.selected);
+                    watcher.selected.clear();
+                }
+            }
+
+            if (batch != null && !queue.offer(batch)) {
+                synchronized (this) {
+                    for (Map.Entry<String, Map.Entry<Path, Path>> event : batch) {
+                        invalidated.add(event.getValue().getKey());
+                    }
+                }
+            }
+
+            if (!watcher.isOpen()) {
+                ended = true;
+                queue.offer(END);
+            }
+        }
+
+        private synchronized boolean drainInvalidated(Batch batch) {
+            for (Path directory : invalidated) {
+                batch.add("invalidate", directory, NO_NAME);
+            }
+            invalidated.clear();
+
+            return !batch.isEmpty();
+        }
+
+        @Override
+        public boolean poll(Batch batch, long timeout) {
+            batch.clear();
+            if (over) {
+                return false;
+            }
+
+            Batch next = queue.poll();
+            if (next == null) {
+                if (drainInvalidated(batch)) {
+                    return true;
+                }
+
+                if (ended) {
+                    over = true;
+                    return false;
+                }
+
+                try {
+                    next = timeout < 0 ? queue.take() : queue.poll(timeout, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            if (next == END) {
+                over = true;
+                return false;
+            }
+
+            if (next != null) {
+                batch.addAll(next);
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !over;
+        }
+
+        @Override
+        public void close() {
+            hub.unsubscribe(watcher);
+
+            over = true;
+            queue.offer(END);
+        }
+    }
+
+    /**
+     * The watched-tree state recorded in a checkpoint file, one tab-separated record per line with the path last:
+     * "l mtime listed directory" marks a directory listing, "d path" a subdirectory, "f size mtime hash path" a file
+     * and "- path" a removal. Later records override earlier ones, so live changes are simply appended.
+     */
+    private static final class Checkpoint {
+        private static final class Listing {
+            private final long modified;
+            private final long listed;
+
+            Listing(long modified, long listed) {
+                this.modified = modified;
+                this.listed = listed;
+            }
+        }
+
+        private final Map<Path, Listing> listings = new HashMap<>();
+        private final Map<Path, Map<Path, EntryState>> entries = new HashMap<>();
+        private final Map<Path, String> hashes = new HashMap<>();
+
+        /** Escapes the backslash and every character that would split a field or a line. */
+        private static String escape(Path path) {
+            String name = path.toString();
+
+            StringBuilder result = new StringBuilder(name.length());
+            for (int index = 0; index < name.length(); index++) {
+                char c = name.charAt(index);
+
+                switch (c) {
+                    case '\\':
+                        result.append("\\\\");
+                        break;
+                    case '\t':
+                        result.append("\\t");
+                        break;
+                    case '\n':
+                        result.append("\\n");
+                        break;
+                    case '\r':
+                        result.append("\\r");
+                        break;
+                    default:
+                        result.append(c);
+                }
+            }
+
+            return result.toString();
+        }
+
+        private static Path unescape(String path) {
+            StringBuilder result = new StringBuilder(path.length());
+            for (int index = 0; index < path.length(); index++) {
+                char c = path.charAt(index);
+
+                if (c == '\\' && index + 1 < path.length()) {
+                    switch (c = path.charAt(++index)) {
+                        case 't':
+                            c = '\t';
+                            break;
+                        case 'n':
+                            c = '\n';
+                            break;
+                        case 'r':
+                            c = '\r';
+                            break;
+                        default:
+                            break;
+                    }
+                }
+
+                result.append(c);
+            }
+
+            return Paths.get(result.toString());
+        }
+
+        static String listing(Path directory, long modified, long listed) {
+            return String.format("l\t%d\t%d\t%s%n", modified, listed, escape(directory));
+        }
+
+        static String entry(Path path, EntryState state, String hash) {
+            return state.isDirectory() ?
+                    String.format("d\t%s%n", escape(path)) :
+                    String.format("f\t%d\t%d\t%s\t%s%n", state.size, state.modified, hash == null ? "-" : hash,
+                            escape(path));
+        }
+
+        static String removal(Path path) {
+            return String.format("-\t%s%n", escape(path));
+        }
+
+        private void put(Path path, EntryState state, String hash) {
+            Map<Path, EntryState> siblings = entries.get(path.getParent());
+            if (siblings == null) {
+                siblings = new HashMap<>();
+                entries.put(path.getParent(), siblings);
+            }
+
+            siblings.put(path.getFileName(), state);
+            if (hash == null) {
+                hashes.remove(path);
+            } else {
+                hashes.put(path, hash);
+            }
+        }
+
+        private void remove(Path path) {
+            Map<Path, EntryState> siblings = entries.get(path.getParent());
+            if (siblings != null) {
+                siblings.remove(path.getFileName());
+            }
+
+            listings.remove(path);
+            hashes.remove(path);
+        }
+
+        private void apply(String record) {
+            String[] fields = record.split("\t", -1);
+
+            switch (fields[0]) {
+                case "l":
+                    listings.put(unescape(fields[3]),
+                            new Listing(Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+                    break;
+                case "d":
+                    put(unescape(fields[1]), new EntryState(true, 0, 0), null);
+                    break;
+                case "f":
+                    put(unescape(fields[4]), new EntryState(false, Long.parseLong(fields[1]),
+                            Long.parseLong(fields[2])), "-".equals(fields[3]) ? null : fields[3]);
+                    break;
+                case "-":
+                    remove(unescape(fields[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Invalid checkpoint record: %s", record));
+            }
+        }
+
+        /** Loads the checkpoint, skipping records a crash left half-written; null when there is none yet. */
+        static Checkpoint load(Path file) {
+            if (!Files.exists(file)) {
+                return null;
+            }
+
+            Checkpoint result = new Checkpoint();
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    try {
+                        result.apply(line);
+                    } catch (RuntimeException ignore) {
+                        /* A torn or unknown record. */
+                    }
+                }
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+
+            return result;
+        }
+
+        Listing listingOf(Path directory) {
+            return listings.get(directory);
+        }
+
+        Map<Path, EntryState> entriesOf(Path directory) {
+            Map<Path, EntryState> result = entries.get(directory);
+            return result != null ? result : Collections.<Path, EntryState>emptyMap();
+        }
+
+        String hashOf(Path path) {
+            return hashes.get(path);
+        }
+    }
+
+    private static String hash(Path path) {
+        try (InputStream input = Files.newInputStream(path)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            byte[] buffer = new byte[1 << 16];
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+
+            return String.format("%064x", new BigInteger(1, digest.digest()));
+        } catch (IOException | NoSuchAlgorithmException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Reports the changes made while nobody was watching, by comparing the tree against the checkpoint file, before
+     * handing out live events, whose effects it then appends to the file. A directory is only listed again when its
+     * mtime moved since it was last listed; otherwise only its known files are stat'ed, and only if modifications are
+     * watched. With hashing, a file whose size or mtime changed but whose content did not is not reported.
+     */
+    private static final class CheckpointedSource implements EventSource {
+        private static final long MODIFIED_TIME_GRANULARITY = 2000;
+
+        private final EventSource source;
+        private final Set<WatchEvent.Kind<?>> desiredEvents;
+        private final boolean recursive;
+        private final boolean hashing;
+
+        private final Batch offline = new Batch();
+        private final Writer log;
+
+        CheckpointedSource(EventSource source, Path file, List<WatchEvent.Kind<Path>> events, Collection<Path> paths,
+                           Object... options) {
+            this.source = source;
+            this.desiredEvents = new HashSet<WatchEvent.Kind<?>>(events.isEmpty() ? allWatchEvents() : events);
+            this.recursive = Maps.get(options, "recursive?", Boolean.class, "default", false);
+            this.hashing = Maps.get(options, "checkpoint-hash?", Boolean.class, "default", false);
+
+            Checkpoint checkpoint = Checkpoint.load(file);
+            Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                try (Writer snapshot = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                    for (Path path : paths) {
+                        reconcile(path, checkpoint, snapshot);
+                    }
+                }
+
+                try {
+                    Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException exception) {
+                    Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                this.log = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            } catch (IOException exception) {
+                source.close();
+                throw new RuntimeException(exception);
+            }
+        }
+
+        private boolean isDesired(String eventType) {
+            return desiredEvents.contains(mapToWatchEventKind(eventType));
+        }
+
+        private void emit(String type, Path directory, Path name) {
+            if (isDesired(type)) {
+                offline.add(type, directory, name);
+            }
+        }
+
+        private void removed(Path directory, Checkpoint checkpoint) {
+            for (Map.Entry<Path, EntryState> entry : checkpoint.entriesOf(directory).entrySet()) {
+                if (recursive && entry.getValue().isDirectory()) {
+                    removed(directory.resolve(entry.getKey()), checkpoint);
+                }
+
+                emit("delete", directory, entry.getKey());
+            }
+        }
+
+        private boolean isModified(Path path, EntryState before, EntryState after, Checkpoint checkpoint,
+                                   String[] hash) {
+            if (before.isSameAs(after)) {
+                hash[0] = checkpoint.hashOf(path);
+                return false;
+            }
+
+            if (!hashing) {
+                return true;
+            }
+
+            hash[0] = hash(path);
+            return hash[0] == null || !hash[0].equals(checkpoint.hashOf(path));
+        }
+
+        private void reconcile(Path directory, Checkpoint checkpoint, Writer snapshot) throws IOException {
+            long listed = System.currentTimeMillis();
+            long modified = Files.readAttributes(directory, BasicFileAttributes.class).lastModifiedTime().toMillis();
+
+            Map<Path, EntryState> before = checkpoint == null ?
+                    Collections.<Path, EntryState>emptyMap() : checkpoint.entriesOf(directory);
+            Checkpoint.Listing listing = checkpoint == null ? null : checkpoint.listingOf(directory);
+
+            Map<Path, EntryState> after;
+            if (listing != null && listing.modified == modified &&
+                    MODIFIED_TIME_GRANULARITY <= listing.listed - listing.modified) {
+                listed = listing.listed;
+                after = new HashMap<>(before);
+
+                if (isDesired("modify")) {
+                    for (Map.Entry<Path, EntryState> entry : after.entrySet()) {
+                        if (!entry.getValue().isDirectory()) {
+                            EntryState state = stat(directory.resolve(entry.getKey()));
+                            entry.setValue(state != null ? state : entry.getValue());
+                        }
+                    }
+                }
+            } else {
+                after = scan(directory);
+            }
+
+            snapshot.write(Checkpoint.listing(directory, modified, listed));
+
+            String[] hash = new String[1];
+            for (Map.Entry<Path, EntryState> entry : after.entrySet()) {
+                Path path = directory.resolve(entry.getKey());
+                EntryState previous = before.get(entry.getKey());
+
+                hash[0] = null;
+                if (previous == null || previous.isDirectory() != entry.getValue().isDirectory()) {
+                    if (checkpoint != null && previous != null) {
+                        if (recursive && previous.isDirectory()) {
+                            removed(path, checkpoint);
+                        }
+
+                        emit("delete", directory, entry.getKey());
+                    }
+
+                    if (checkpoint != null) {
+                        emit("create", directory, entry.getKey());
+                    }
+                } else if (!entry.getValue().isDirectory() &&
+                        isModified(path, previous, entry.getValue(), checkpoint, hash)) {
+                    emit("modify", directory, entry.getKey());
+                }
+
+                if (hashing && hash[0] == null && !entry.getValue().isDirectory()) {
+                    hash[0] = hash(path);
+                }
+
+                snapshot.write(Checkpoint.entry(path, entry.getValue(), hash[0]));
+            }
+
+            for (Map.Entry<Path, EntryState> entry : before.entrySet()) {
+                if (!after.containsKey(entry.getKey())) {
+                    if (recursive && entry.getValue().isDirectory()) {
+                        removed(directory.resolve(entry.getKey()), checkpoint);
+                    }
+
+                    emit("delete", directory, entry.getKey());
+                }
+            }
+
+            if (recursive) {
+                for (Map.Entry<Path, EntryState> entry : after.entrySet()) {
+                    if (entry.getValue().isDirectory()) {
+                        try {
+                            reconcile(directory.resolve(entry.getKey()), checkpoint, snapshot);
+                        } catch (NoSuchFileException | NotDirectoryException ignore) {
+                            /* Vanished while reconciling; the live watch reports it. */
+                        }
+                    }
+                }
+            }
+        }
+
+        private void record(Batch batch) {
+            try {
+                for (int index = 0; index < batch.size(); index++) {
+                    Path path = batch.path(index);
+
+                    switch (batch.type(index)) {
+                        case "create":
+                        case "modify":
+                            EntryState state = stat(path);
+                            log.write(state == null ?
+                                    Checkpoint.removal(path) :
+                                    Checkpoint.entry(path, state, hashing && !state.isDirectory() ? hash(path) : null));
+                            break;
+                        case "delete":
+                            log.write(Checkpoint.removal(path));
+                            break;
+                        default:
+                            break;
+                    }
+                }
+
+                log.flush();
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+        }
+
+        @Override
+        public boolean poll(Batch batch, long timeout) {
+            if (!offline.isEmpty()) {
+                batch.clear();
+                batch.addAll(offline);
+                offline.clear();
+
+                return true;
+            }
+
+            boolean result = source.poll(batch, timeout);
+            if (result) {
+                record(batch);
+            }
+
+            return result;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return source.isOpen();
+        }
+
+        @Override
+        public void close() {
+            source.close();
+
+            try {
+                log.close();
+            } catch (IOException ignore) {
+                /*NOP*/
+            }
+        }
+    }
+
+    private static EventSource liveWatcherFor(List<WatchEvent.Kind<Path>> events, Collection<Path> paths,
+                                              Object... options) {
+        long pollInterval = Maps.get(options, "poll-interval", Long.class, "default", 0L);
+        if (0 < pollInterval) {
+            return new PollingWatcher(events, paths, pollInterval, options);
+        }
+
+        return Maps.get(options, "shared?", Boolean.class, "default", false) ?
+                WatchHub.INSTANCE.subscribe(events, paths, options) :
+                new DirectoryWatcher(events, paths, null, options);
+    }
+
+    private static EventSource watcherFor(List<WatchEvent.Kind<Path>> events, Collection<Path> paths,
+                                          Object... options) {
+        EventSource result = liveWatcherFor(events, paths, options);
+
+        Path checkpoint = Maps.get(options, "checkpoint", Path.class, "default", null);
+        return checkpoint != null ? new CheckpointedSource(result, checkpoint, events, paths, options) : result;
+    }
+
+    private static final class WatchEventIterator implements Iterator<Map.Entry<String, Map.Entry<Path, Path>>>,
+            Closeable {
+        private final Watch watch;
+
+        private Batch pending;
+        private int index;
+        private boolean done;
+
+        WatchEventIterator(Watch watch) {
+            this.watch = watch;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!done && (pending == null || index == pending.size())) {
+                pending = watch.take();
+                index = 0;
+
+                if (pending == null) {
+                    close();
+                }
+            }
+
+            return !done;
+        }
+
+        @Override
+        public Map.Entry<String, Map.Entry<Path, Path>> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return pending.get(index++);
+        }
 
-        return result;
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            done = true;
+            watch.close();
+        }
     }
 
+    private static final class WatchBatchIterator implements Iterator<Batch>, Closeable {
+        private final Watch watch;
 
-    private static List<WatchEvent.Kind<Path>> allWatchEvents() {
-        List<WatchEvent.Kind<Path>> result = new LinkedList<>();
-        Collections.addAll(result,
-                StandardWatchEventKinds.ENTRY_CREATE,
-                StandardWatchEventKinds.ENTRY_DELETE,
-                StandardWatchEventKinds.ENTRY_MODIFY);
+        private boolean ready;
+        private boolean done;
 
-        return result;
-    }
+        WatchBatchIterator(Watch watch) {
+            this.watch = watch;
+        }
 
-    private static Map.Entry<WatchService, Map<WatchKey, Path>> associateWatcherFor(List<WatchEvent.Kind<Path>> events,
-                                                                                    Collection<Path> paths) {
-        List<WatchEvent.Kind<Path>> desiredEvents = events.isEmpty() ? allWatchEvents() : events;
-        try {
-            WatchService watcher = FileSystems.getDefault().newWatchService();
+        @Override
+        public boolean hasNext() {
+            if (!ready && !done) {
+                if (watch.take() == null) {
+                    close();
+                } else {
+                    ready = true;
+                }
+            }
 
-            Map<WatchKey, Path> keys = new HashMap<>();
-            for (Path path : paths) {
-                keys.put(path.register(watcher, desiredEvents.toArray(new WatchEvent.Kind[desiredEvents.size()])), path);
+            return ready;
+        }
+
+        @Override
+        public Batch next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
 
-            return new AbstractMap.SimpleImmutableEntry<>(watcher, keys);
-        } catch (IOException exception) {
-            throw new RuntimeException(exception);
+            ready = false;
+            return watch.batch();
         }
-    }
 
-    private static void ensureClosed(WatchService watchService) {
-        try {
-            watchService.close();
-        } catch (IOException ignore) {
-            /*NOP*/
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            done = true;
+            watch.close();
         }
     }
 
-    private static String formatEventType(WatchEvent<?> event) {
-        WatchEvent.Kind<?> kind = event.kind();
+    /**
+     * A running watch. Standalone watches are consumed with {@link #take()}, {@link #poll(long, TimeUnit)} or by
+     * iterating, watches opened through a {@link Selector} through the selector; closing a watch releases its
+     * resources and wakes up a consumer blocked on it.
+     */
+    public static final class Watch implements Iterable<Map.Entry<String, Map.Entry<Path, Path>>>, Closeable {
+        private final EventSource source;
+        private final Batch batch;
+        private final Selector selector;
+        private final Listener listener;
 
-        if (StandardWatchEventKinds.OVERFLOW.equals(kind)) {
-            return "invalidate";
-        } else if (StandardWatchEventKinds.ENTRY_CREATE.equals(kind)) {
-            return "create";
-        } else if (StandardWatchEventKinds.ENTRY_DELETE.equals(kind)) {
-            return "delete";
-        } else if (StandardWatchEventKinds.ENTRY_MODIFY.equals(kind)) {
-            return "modify";
+        Watch(EventSource source, Batch batch, Selector selector, Listener listener) {
+            this.source = source;
+            this.batch = batch;
+            this.selector = selector;
+            this.listener = listener;
         }
 
-        return "invalidate";
-    }
+        private Batch taken(boolean open) {
+            if (!open) {
+                return null;
+            }
 
-    private static boolean isOverflowEvent(WatchEvent<?> event) {
-        return StandardWatchEventKinds.OVERFLOW.equals(event.kind());
-    }
+            if (listener != null && !batch.isEmpty()) {
+                listener.eventsTaken(batch);
+            }
 
-    private static Map.Entry<Path, Path> formatOrigin(Path directoryPath, WatchEvent<?> event) {
-        if (isOverflowEvent(event)) {
-            return new AbstractMap.SimpleImmutableEntry<>(directoryPath, Paths.get(""));
+            return batch;
         }
 
-        @SuppressWarnings("unchecked") WatchEvent<Path> pathEvent = (WatchEvent<Path>) event;
-        return new AbstractMap.SimpleImmutableEntry<>(directoryPath, pathEvent.context());
-    }
+        private void ensureStandalone() {
+            if (selector != null) {
+                throw new IllegalStateException("Watch is polled through its selector");
+            }
+        }
 
-    private static class WatchEventIterator implements Iterator<Map.Entry<String, Map.Entry<Path, Path>>> {
-        private final WatchService watcher;
-        private final Map<WatchKey, Path> keys;
+        /** Waits up to the timeout for events; returns an empty batch on timeout and null once the watch is over. */
+        public Batch poll(long timeout, TimeUnit unit) {
+            ensureStandalone();
+            return taken(source.poll(batch, Math.max(0, unit.toNanos(timeout))));
+        }
 
-        private final List<Map.Entry<String, Map.Entry<Path, Path>>> pending = new LinkedList<>();
+        /** Waits for events; returns null once the watch is over. */
+        public Batch take() {
+            ensureStandalone();
+            return taken(source.poll(batch, -1));
+        }
 
-        WatchEventIterator(List<WatchEvent.Kind<Path>> events, Collection<Path> paths) {
-            Map.Entry<WatchService, Map<WatchKey, Path>> specification = associateWatcherFor(events, paths);
+        /** The events last handed out; refilled by every take, poll or selection. */
+        public Batch batch() {
+            return batch;
+        }
 
-            this.watcher = specification.getKey();
-            this.keys = specification.getValue();
+        public boolean isOpen() {
+            return source.isOpen();
         }
 
+        /** Iterates over the events until the watch is over; the iterator is {@link Closeable}. */
         @Override
-        public boolean hasNext() {
-            return !Thread.currentThread().isInterrupted();
+        public Iterator<Map.Entry<String, Map.Entry<Path, Path>>> iterator() {
+            ensureStandalone();
+            return new WatchEventIterator(this);
         }
 
-        private List<Map.Entry<String, Map.Entry<Path, Path>>> awaitEvents() {
-            WatchKey key;
-            try {
-                key = watcher.take();
-            } catch (InterruptedException exception) {
-                Thread.currentThread().interrupt();
-                return Collections.emptyList();
-            }
+        Iterator<Batch> batches() {
+            ensureStandalone();
+            return new WatchBatchIterator(this);
+        }
 
-            List<Map.Entry<String, Map.Entry<Path, Path>>> result = new LinkedList<>();
-            for (WatchEvent<?> event : key.pollEvents()) {
-                result.add(new AbstractMap.SimpleImmutableEntry<>(
-                        formatEventType(event),
-                        formatOrigin(keys.get(key), event)));
+        @Override
+        public void close() {
+            source.close();
+
+            if (selector != null) {
+                selector.watches.remove(source);
             }
+        }
+    }
 
-            if (!key.reset()) {
-                keys.remove(key);
+    /**
+     * Lets one thread wait for many native watches at once. The watches share the selector's WatchService, which
+     * hands each signalled key to every watch registered for its directory.
+     */
+    public static final class Selector implements Closeable {
+        private final WatchRegistry registry = new WatchRegistry(true);
+        private final Map<EventSource, Watch> watches = new ConcurrentHashMap<>();
+        private final List<Watch> selected = new ArrayList<>();
 
-                if (keys.isEmpty()) {
-                    return Collections.emptyList();
-                }
+        Selector() {
+        }
+
+        /** Opens a native watch polled through this selector; accepts the options of watchDirectories. */
+        public Watch open(List<String> eventTypes, Collection<Path> paths, Object... options) {
+            if (0 < Maps.get(options, "poll-interval", Long.class, "default", 0L)) {
+                throw new IllegalArgumentException("Polling watches cannot be selected");
             }
 
+            DirectoryWatcher watcher = new DirectoryWatcher(mapToWatchEventKinds(eventTypes), paths, registry,
+                    options);
+            Watch result = new Watch(watcher, watcher.selected, this, listener(options));
+            watches.put(watcher, result);
+
             return result;
         }
 
-        @Override
-        public Map.Entry<String, Map.Entry<Path, Path>> next() {
-            if (pending.isEmpty()) {
-                pending.addAll(awaitEvents());
+        public Watch open(Collection<Path> paths, Object... options) {
+            return open(Collections.<String>emptyList(), paths, options);
+        }
+
+        /**
+         * Waits up to the timeout for events on any of the selector's watches and returns the watches that received
+         * some, each holding them in its batch until the next call; a watch that ended is returned once more with
+         * an empty batch. Returns an empty list on timeout and null once the selector is closed or the current
+         * thread is interrupted.
+         */
+        public List<Watch> poll(long timeout, TimeUnit unit) {
+            for (Watch watch : selected) {
+                watch.batch.clear();
+            }
+            selected.clear();
+
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (selected.isEmpty()) {
+                WatchKey key;
+                try {
+                    key = registry.service.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                } catch (ClosedWatchServiceException exception) {
+                    return null;
+                }
+
+                if (key == null) {
+                    break;
+                }
+
+                for (DirectoryWatcher owner : registry.dispatch(key)) {
+                    Watch watch = watches.get(owner);
 
-                if (pending.isEmpty()) {
-                    ensureClosed(watcher);
+                    if (watch != null && (!owner.selected.isEmpty() || !owner.isOpen())) {
+                        selected.add(watch);
+                        watch.taken(true);
 
-                    return null; // Appropriate Sentinel?
+                        if (!owner.isOpen()) {
+                            watches.remove(owner);
+                        }
+                    }
                 }
             }
 
-            return pending.remove(0);
+            return new ArrayList<>(selected);
         }
 
         @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
+        public void close() {
+            for (Watch watch : new ArrayList<>(watches.values())) {
+                watch.close();
+            }
+
+            registry.close();
         }
     }
 
+    public static Selector selector() {
+        return new Selector();
+    }
+
+    /** Starts watching right away and returns the handle; accepts the options of watchDirectories. */
+    public static Watch openWatch(List<String> eventTypes, Collection<Path> paths, Object... options) {
+        EventSource source = watcherFor(mapToWatchEventKinds(eventTypes), paths, options);
+        return new Watch(source, new Batch(), null, listener(options));
+    }
+
+    public static Watch openWatch(Collection<Path> paths, Object... options) {
+        return openWatch(Collections.<String>emptyList(), paths, options);
+    }
+
 
     private static WatchEvent.Kind<Path> mapToWatchEventKind(String eventType) {
         if (eventType == null) {
@@ -174,11 +2147,12 @@ public final class Watching {
     }
 
     public static Iterable<Map.Entry<String, Map.Entry<Path, Path>>> watchDirectories(final List<String> eventTypes,
-                                                                     final Collection<Path> paths) {
+                                                                     final Collection<Path> paths,
+                                                                     final Object... options) {
         return new Iterable<Map.Entry<String, Map.Entry<Path, Path>>>() {
             @Override
             public Iterator<Map.Entry<String, Map.Entry<Path, Path>>> iterator() {
-                return new WatchEventIterator(mapToWatchEventKinds(eventTypes), paths);
+                return openWatch(eventTypes, paths, options).iterator();
             }
         };
     }
@@ -188,8 +2162,9 @@ public final class Watching {
         return watchDirectories(eventTypes, cons(path, asList(rest)));
     }
 
-    public static Iterable<Map.Entry<String, Map.Entry<Path, Path>>> watchDirectories(Collection<Path> paths) {
-        return watchDirectories(Collections.<String>emptyList(), paths);
+    public static Iterable<Map.Entry<String, Map.Entry<Path, Path>>> watchDirectories(Collection<Path> paths,
+                                                                     Object... options) {
+        return watchDirectories(Collections.<String>emptyList(), paths, options);
     }
 
     public static Iterable<Map.Entry<String, Map.Entry<Path, Path>>> watchDirectories(Path path, Path... rest) {
@@ -197,37 +2172,442 @@ public final class Watching {
     }
 
 
+    /**
+     * Watches like {@link #watchDirectories(List, Collection, Object...)}, but hands out the events of each watch key
+     * poll as one {@link Batch}; the same batch instance is refilled on every call to next().
+     */
+    public static Iterable<Batch> watchDirectoriesInBatches(final List<String> eventTypes,
+                                                            final Collection<Path> paths,
+                                                            final Object... options) {
+        return new Iterable<Batch>() {
+            @Override
+            public Iterator<Batch> iterator() {
+                return openWatch(eventTypes, paths, options).batches();
+            }
+        };
+    }
+
+    public static Iterable<Batch> watchDirectoriesInBatches(Collection<Path> paths, Object... options) {
+        return watchDirectoriesInBatches(Collections.<String>emptyList(), paths, options);
+    }
+
+
     public interface Callback extends Function<Map.Entry<String, Map.Entry<Path, Path>>, Void> {
     }
 
-    public static void watchDirectories(Callback callback, List<String> eventTypes, Collection<Path> paths) {
-        Map.Entry<WatchService, Map<WatchKey, Path>> specification = associateWatcherFor(
-                mapToWatchEventKinds(eventTypes), paths);
+    /**
+     * Collapses the events of each path into one net change, delivered from a background thread once the path has
+     * been quiet for the configured period. A create followed by a delete cancels out, a delete followed by a create
+     * becomes a modify; an overflow delivers everything pending ahead of it. Closing delivers whatever is left.
+     */
+    public static final class Coalescing implements Callback, Closeable {
+        private static final class Pending {
+            private final String type;
+            private long deadline;
+
+            Pending(String type, long deadline) {
+                this.type = type;
+                this.deadline = deadline;
+            }
+        }
+
+        private final Callback callback;
+        private final long quietPeriod;
+
+        private final LinkedHashMap<Map.Entry<Path, Path>, Pending> pending = new LinkedHashMap<>();
+        private final Thread deliverer;
+
+        private boolean closed;
+        private volatile RuntimeException failure;
+
+        Coalescing(Callback callback, long quietPeriod) {
+            this.callback = callback;
+            this.quietPeriod = TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+
+            this.deliverer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    deliverQuietEvents();
+                }
+            }, "watch coalescing");
+            this.deliverer.setDaemon(true);
+            this.deliverer.start();
+        }
+
+        static String coalesce(String previous, String current) {
+            if (previous == null) {
+                return current;
+            }
+
+            switch (previous) {
+                case "create":
+                    return "delete".equals(current) ? null : "create";
+                case "delete":
+                    return "delete".equals(current) ? "delete" : "modify";
+                default:
+                    return "delete".equals(current) ? "delete" : "modify";
+            }
+        }
+
+        private List<Map.Entry<String, Map.Entry<Path, Path>>> awaitQuietEvents() throws InterruptedException {
+            List<Map.Entry<String, Map.Entry<Path, Path>>> result = new ArrayList<>();
+
+            synchronized (pending) {
+                while (result.isEmpty()) {
+                    if (closed && pending.isEmpty()) {
+                        break;
+                    }
+
+                    long now = System.nanoTime();
+                    long remaining = 0;
+                    for (Iterator<Map.Entry<Map.Entry<Path, Path>, Pending>> entries = pending.entrySet().iterator();
+                         entries.hasNext(); ) {
+                        Map.Entry<Map.Entry<Path, Path>, Pending> entry = entries.next();
+
+                        remaining = entry.getValue().deadline - now;
+                        if (0 < remaining && !closed) {
+                            break;
+                        }
+
+                        result.add(new AbstractMap.SimpleImmutableEntry<>(entry.getValue().type, entry.getKey()));
+                        entries.remove();
+                    }
+
+                    if (result.isEmpty()) {
+                        if (0 < remaining) {
+                            TimeUnit.NANOSECONDS.timedWait(pending, remaining);
+                        } else {
+                            pending.wait();
+                        }
+                    }
+                }
+            }
 
-        WatchService watcher = specification.getKey();
-        Map<WatchKey, Path> keys = specification.getValue();
+            return result;
+        }
 
-        while (!Thread.currentThread().isInterrupted()) {
-            WatchKey key;
+        private void deliverQuietEvents() {
             try {
-                key = watcher.take();
+                for (List<Map.Entry<String, Map.Entry<Path, Path>>> events = awaitQuietEvents(); !events.isEmpty();
+                     events = awaitQuietEvents()) {
+                    for (Map.Entry<String, Map.Entry<Path, Path>> event : events) {
+                        callback.$(event);
+                    }
+                }
             } catch (InterruptedException exception) {
                 Thread.currentThread().interrupt();
-                break;
+            } catch (RuntimeException exception) {
+                failure = exception;
             }
+        }
 
-            for (WatchEvent<?> event : key.pollEvents()) {
-                callback.$(
-                        new AbstractMap.SimpleImmutableEntry<>(
-                                formatEventType(event),
-                                formatOrigin(keys.get(key), event)));
+        private void ensureHealthy() {
+            if (failure != null) {
+                throw failure;
             }
 
-            if (!key.reset()) {
-                keys.remove(key);
+            if (closed) {
+                throw new IllegalStateException("Coalescing callback is closed");
+            }
+        }
+
+        @Override
+        public Void $(Map.Entry<String, Map.Entry<Path, Path>> event) {
+            synchronized (pending) {
+                ensureHealthy();
+
+                long now = System.nanoTime();
+                if ("invalidate".equals(event.getKey())) {
+                    for (Pending previous : pending.values()) {
+                        previous.deadline = now;
+                    }
+
+                    pending.remove(event.getValue());
+                    pending.put(event.getValue(), new Pending(event.getKey(), now));
+                } else {
+                    Pending previous = pending.remove(event.getValue());
+
+                    String type = coalesce(previous == null ? null : previous.type, event.getKey());
+                    if (type != null) {
+                        pending.put(event.getValue(), new Pending(type, now + quietPeriod));
+                    }
+                }
+
+                pending.notifyAll();
+            }
+
+            return null;
+        }
+
+        @Override
+        public void close() {
+            synchronized (pending) {
+                if (closed) {
+                    return;
+                }
+
+                closed = true;
+                pending.notifyAll();
+            }
+
+            boolean interrupted = false;
+            while (deliverer.isAlive()) {
+                try {
+                    deliverer.join();
+                } catch (InterruptedException exception) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Wraps the callback so that bursts of events for the same path are delivered as one net change after the
+     * given quiet period in milliseconds.
+     */
+    public static Coalescing coalescing(Callback callback, long quietPeriod) {
+        return new Coalescing(callback, quietPeriod);
+    }
+
+    /**
+     * Hands events to a pool of worker lanes so that a slow callback does not stall event intake. Every path hashes
+     * to one lane, which keeps the events of a path in order; lanes are bounded queues that either block the producer
+     * or, with the "drop" overflow policy, count and discard what does not fit.
+     */
+    public static final class Dispatching implements Callback, Closeable {
+        private static final Map.Entry<String, Map.Entry<Path, Path>> CLOSE =
+                new AbstractMap.SimpleImmutableEntry<>("close", null);
+
+        private final Callback callback;
+        private final boolean dropping;
+
+        private final List<BlockingQueue<Map.Entry<String, Map.Entry<Path, Path>>>> lanes = new ArrayList<>();
+        private final List<Thread> workers = new ArrayList<>();
+
+        private final AtomicLong dispatched = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+
+        private volatile boolean closed;
+        private volatile RuntimeException failure;
 
-                if (keys.isEmpty()) {
+        Dispatching(Callback callback, Object... options) {
+            this.callback = callback;
+
+            String overflow = Maps.get(options, "overflow", String.class, "default", "block");
+            switch (overflow) {
+                case "block":
+                    this.dropping = false;
+                    break;
+                case "drop":
+                    this.dropping = true;
                     break;
+                default:
+                    throw new IllegalArgumentException(String.format("Invalid overflow policy specified: %s", overflow));
+            }
+
+            int parallelism = Maps.get(options, "parallelism", Integer.class, "default",
+                    Runtime.getRuntime().availableProcessors());
+            int capacity = Maps.get(options, "queue-capacity", Integer.class, "default", 1024);
+            for (int index = 0; index < parallelism; index++) {
+                final BlockingQueue<Map.Entry<String, Map.Entry<Path, Path>>> lane = new ArrayBlockingQueue<>(capacity);
+
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        drainLane(lane);
+                    }
+                }, String.format("watch dispatch: %d", index));
+                worker.setDaemon(true);
+
+                lanes.add(lane);
+                workers.add(worker);
+            }
+
+            for (Thread worker : workers) {
+                worker.start();
+            }
+        }
+
+        private void drainLane(BlockingQueue<Map.Entry<String, Map.Entry<Path, Path>>> lane) {
+            while (true) {
+                Map.Entry<String, Map.Entry<Path, Path>> event;
+                try {
+                    event = lane.take();
+                } catch (InterruptedException exception) {
+                    return;
+                }
+
+                if (event == CLOSE) {
+                    return;
+                }
+
+                if (failure != null) {
+                    continue;
+                }
+
+                try {
+                    callback.$(event);
+                } catch (RuntimeException exception) {
+                    failure = exception;
+                }
+            }
+        }
+
+        private BlockingQueue<Map.Entry<String, Map.Entry<Path, Path>>> laneFor(Map.Entry<Path, Path> origin) {
+            int hash = origin.hashCode();
+            hash ^= hash >>> 16;
+
+            return lanes.get((hash & Integer.MAX_VALUE) % lanes.size());
+        }
+
+        private void ensureHealthy() {
+            if (failure != null) {
+                throw failure;
+            }
+
+            if (closed) {
+                throw new IllegalStateException("Dispatching callback is closed");
+            }
+        }
+
+        @Override
+        public Void $(Map.Entry<String, Map.Entry<Path, Path>> event) {
+            ensureHealthy();
+
+            BlockingQueue<Map.Entry<String, Map.Entry<Path, Path>>> lane = laneFor(event.getValue());
+            if (dropping) {
+                if (lane.offer(event)) {
+                    dispatched.incrementAndGet();
+                } else {
+                    dropped.incrementAndGet();
+                }
+
+                return null;
+            }
+
+            try {
+                lane.put(event);
+                dispatched.incrementAndGet();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                dropped.incrementAndGet();
+            }
+
+            return null;
+        }
+
+        public long dispatched() {
+            return dispatched.get();
+        }
+
+        public long dropped() {
+            return dropped.get();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            boolean interrupted = false;
+            for (BlockingQueue<Map.Entry<String, Map.Entry<Path, Path>>> lane : lanes) {
+                while (true) {
+                    try {
+                        lane.put(CLOSE);
+                        break;
+                    } catch (InterruptedException exception) {
+                        interrupted = true;
+                    }
+                }
+            }
+
+            for (Thread worker : workers) {
+                while (worker.isAlive()) {
+                    try {
+                        worker.join();
+                    } catch (InterruptedException exception) {
+                        interrupted = true;
+                    }
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Dispatching(dispatched: %d, dropped: %d)", dispatched(), dropped());
+        }
+    }
+
+    /**
+     * Wraps the callback so that it runs on a pool of worker lanes; accepts the "parallelism", "queue-capacity"
+     * and "overflow" ("block" or "drop") options.
+     */
+    public static Dispatching dispatching(Callback callback, Object... options) {
+        return new Dispatching(callback, options);
+    }
+
+    public static void watchDirectories(Callback callback, List<String> eventTypes, Collection<Path> paths,
+                                        Object... options) {
+        long quietPeriod = Maps.get(options, "quiet-period", Long.class, "default", 0L);
+        Listener listener = listener(options);
+
+        EventSource watcher = watcherFor(mapToWatchEventKinds(eventTypes), paths, options);
+        Dispatching dispatching = Maps.get(options, "dispatch?", Boolean.class, "default", false) ?
+                dispatching(callback, options) : null;
+        Callback dispatched = dispatching != null ? dispatching : callback;
+        Coalescing coalescing = 0 < quietPeriod ? coalescing(dispatched, quietPeriod) : null;
+        Callback target = coalescing != null ? coalescing : dispatched;
+        try {
+            Batch batch = new Batch();
+            while (watcher.poll(batch, -1)) {
+                if (listener == null) {
+                    for (int index = 0; index < batch.size(); index++) {
+                        target.$(batch.get(index));
+                    }
+
+                    continue;
+                }
+
+                long taken = System.nanoTime();
+                listener.eventsTaken(batch);
+
+                for (int index = 0; index < batch.size(); index++) {
+                    long started = System.nanoTime();
+                    target.$(batch.get(index));
+
+                    long completed = System.nanoTime();
+                    listener.callbackCompleted(completed - started, completed - taken);
+                }
+            }
+        } finally {
+            watcher.close();
+
+            try {
+                if (coalescing != null) {
+                    coalescing.close();
+                }
+            } finally {
+                if (dispatching != null) {
+                    dispatching.close();
                 }
             }
         }
@@ -237,8 +2617,8 @@ public final class Watching {
         watchDirectories(callback, eventTypes, cons(path, asList(rest)));
     }
 
-    public static void watchDirectories(Callback callback, Collection<Path> paths) {
-        watchDirectories(callback, Collections.<String>emptyList(), paths);
+    public static void watchDirectories(Callback callback, Collection<Path> paths, Object... options) {
+        watchDirectories(callback, Collections.<String>emptyList(), paths, options);
     }
 
     public static void watchDirectories(Callback callback, Path path, Path... rest) {
@@ -0,0 +1,122 @@
+package core;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Rough throughput measurements, run manually: java core.IoBenchmark [megabytes [paths]]
+ */
+public final class IoBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private static Path generate(int megabytes) throws Exception {
+        Path path = Files.createTempFile("benchmark", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            long size = 0;
+            for (long line = 0; size < megabytes * 1024L * 1024L; line++) {
+                String contents = String.format("key.%d = value %d # trailing comment %d", line, line * 31, line % 97);
+                writer.write(contents);
+                writer.newLine();
+
+                size += contents.length() + 1;
+            }
+        }
+
+        return path;
+    }
+
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    /**
+     * @return processed units per second
+     */
+    private static double measure(long units, Callable<?> operation) throws Exception {
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+            operation.call();
+        }
+
+        long elapsed = 0;
+        for (int iteration = 0; iteration < MEASURED_ITERATIONS; iteration++) {
+            Map.Entry<Long, ?> result = Timing.time(TimeUnit.NANOSECONDS, operation);
+            elapsed += result.getKey();
+        }
+
+        return units * MEASURED_ITERATIONS / (elapsed / 1e9);
+    }
+
+    private static void slurpScaling(final Path path) throws Exception {
+        long bytes = Files.size(path);
+
+        System.out.printf("slurp(Path, Iterable)              : %8.1f MB/s%n", measure(bytes, new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return Io.slurp(path, Io.ignoringLineSegmentsThatStartWith("#"));
+            }
+        }) / MEGABYTE);
+
+        for (int parallelism = 1; parallelism <= Runtime.getRuntime().availableProcessors(); parallelism++) {
+            final int cores = parallelism;
+            System.out.printf("slurpInParallel(Path, %2d, Iterable): %8.1f MB/s%n", cores, measure(bytes, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return Io.slurpInParallel(path, cores, asList(Io.ignoringLineSegmentsThatStartWith("#")));
+                }
+            }) / MEGABYTE);
+        }
+    }
+
+    private static List<Path> rotatedLogs(int count) {
+        List<Path> result = new ArrayList<>();
+        for (int index = 0; index < count; index++) {
+            result.add(Paths.get(String.format("/var/log/service%d/app.%d.log.%d", index % 10, index % 365, index)));
+        }
+
+        Collections.shuffle(result, new Random(42));
+        return result;
+    }
+
+    private static void pathOrdering(final List<Path> paths) throws Exception {
+        final Map<String, Comparator<Path>> comparators = new LinkedHashMap<>();
+        comparators.put("byPathNumerically", Io.PathOrdering.byPathNumerically());
+        comparators.put("byPathNaturally  ", Io.PathOrdering.byPathNaturally());
+
+        for (final Map.Entry<String, Comparator<Path>> comparator : comparators.entrySet()) {
+            System.out.printf("%s: %10.1f paths/s%n", comparator.getKey(), measure(paths.size(), new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    List<Path> sorted = new ArrayList<>(paths);
+                    Collections.sort(sorted, comparator.getValue());
+
+                    return sorted;
+                }
+            }));
+        }
+
+        System.out.printf("sortNaturally    : %10.1f paths/s%n", measure(paths.size(), new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return Io.PathOrdering.sortNaturally(paths);
+            }
+        }));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path path = generate(args.length == 0 ? 64 : Integer.parseInt(args[0]));
+        try {
+            slurpScaling(path);
+        } finally {
+            Files.delete(path);
+        }
+
+        pathOrdering(rotatedLogs(args.length < 2 ? 100000 : Integer.parseInt(args[1])));
+    }
+}
@@ -2,16 +2,33 @@ package core;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.StringReader;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class IoTest {
     @Test
@@ -27,6 +44,33 @@ public class IoTest {
         assertThat(Io.slurp(new StringReader("Line 0\r\nLine 1")), is("Line 0\nLine 1"));
     }
 
+    private static String slurpMapped(String contents) throws Exception {
+        Path path = Files.createTempFile("slurp", ".txt");
+        try {
+            Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+
+            return Io.slurpMapped(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldAllowToSlurpMapped() throws Exception {
+        assertThat(slurpMapped(""), is(""));
+
+        assertThat(slurpMapped("Line 0\n"), is("Line 0"));
+        assertThat(slurpMapped("Line 0\r"), is("Line 0"));
+        assertThat(slurpMapped("Line 0\r\n"), is("Line 0"));
+
+        assertThat(slurpMapped("Line 0\nLine 1"), is("Line 0\nLine 1"));
+        assertThat(slurpMapped("Line 0\rLine 1"), is("Line 0\nLine 1"));
+        assertThat(slurpMapped("Line 0\r\nLine 1"), is("Line 0\nLine 1"));
+
+        assertThat(slurpMapped("Line 0\r\r\nLine 1\n\n"), is(Io.slurp(new StringReader("Line 0\r\r\nLine 1\n\n"))));
+        assertThat(slurpMapped("Stra\u00dfe \u2013 \ud83d\ude00"), is("Stra\u00dfe \u2013 \ud83d\ude00"));
+    }
+
     @Test
     public void shouldAllowToSlurpIgnoringBlankLines() throws Exception {
         assertThat(Io.slurp(new StringReader(""), Io.ignoringBlankLines()), is(""));
@@ -98,6 +142,347 @@ public class IoTest {
                 is("DIAPER"));
     }
 
+    @Test
+    public void shouldAllowToReadLinesLazily() throws Exception {
+        Path path = Files.createTempFile("lines", ".txt");
+        try {
+            Files.write(path, "Line 0\r\n\n#Line 1\nLine# 2\rLine 3".getBytes(StandardCharsets.UTF_8));
+
+            assertThat(Iterables.toList(Io.lines(path)), is(asList("Line 0", "#Line 1", "Line# 2", "Line 3")));
+            assertThat(Iterables.toList(Io.lines(path, Io.ignoringLineSegmentsThatStartWith("#"))),
+                    is(asList("Line 0", "Line", "Line 3")));
+
+            try (Io.LineIterable lines = Io.lines(path, Io.ignoringLineSegmentsThatStartWith("#"))) {
+                assertThat(Iterables.toList(Iterables.take(2, lines)), is(asList("Line 0", "Line")));
+                assertThat(Iterables.first(lines), is("Line 0"));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldAllowToSlurpInParallelPreservingLineOrder() throws Exception {
+        Path path = Files.createTempFile("slurp", ".txt");
+        try {
+            StringBuilder contents = new StringBuilder();
+            for (int line = 0; line < 1000; line++) {
+                contents.append("Line ").append(line).append(line % 3 == 0 ? " # comment\r\n" : "\n");
+                contents.append(line % 7 == 0 ? "\n# \u2013 \u00df\r" : "");
+            }
+
+            Files.write(path, contents.toString().getBytes(StandardCharsets.UTF_8));
+
+            String expected = Io.slurp(path, Io.ignoringLineSegmentsThatStartWith("#"));
+            assertThat(Io.slurpInParallel(path, Io.ignoringLineSegmentsThatStartWith("#")), is(expected));
+            assertThat(Io.slurpInParallel(path, 1, asList(Io.ignoringLineSegmentsThatStartWith("#"))), is(expected));
+            assertThat(Io.slurpInParallel(path, 3, asList(Io.ignoringLineSegmentsThatStartWith("#"))), is(expected));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldAllowToAppendThroughLongLivedAppender() throws Exception {
+        Path path = Files.createTempFile("appender", ".txt");
+        try {
+            try (Io.Appender appender = Io.appender(path, "append?", false, "buffer-size", 16)) {
+                appender.append("Line 0").append(asList("Line 1", "Line \u2013 2"));
+            }
+
+            assertThat(Io.slurp(path), is("Line 0\nLine 1\nLine \u2013 2"));
+
+            try (Io.Appender appender = Io.appender(path, "async?", true, "queue-capacity", 4, "flush-interval", 500)) {
+                for (int line = 3; line < 100; line++) {
+                    appender.append(String.format("Line %d", line));
+                }
+            }
+
+            List<String> lines = Iterables.toList(Io.lines(path));
+            assertThat(lines.size(), is(100));
+            assertThat(lines.get(99), is("Line 99"));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldFailFastOnceTheAppenderWriterIsGone() throws Exception {
+        Path path = Files.createTempFile("appender", ".txt");
+        Io.Appender appender = Io.appender(path, "async?", true, "queue-capacity", 1, "flush-interval", 60000);
+        try {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals(String.format("appender: %s", path))) {
+                    thread.interrupt();
+                    thread.join();
+                }
+            }
+
+            try {
+                for (int line = 0; line < 1000; line++) {
+                    appender.append(String.format("Line %d", line));
+                }
+                fail();
+            } catch (RuntimeException expected) {
+                assertThat(expected.getCause() instanceof InterruptedIOException, is(true));
+            }
+
+            try {
+                appender.close();
+                fail();
+            } catch (RuntimeException expected) {
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldAllowToCopyConcatenateAndSplitFiles() throws Exception {
+        Path directory = Files.createTempDirectory("transfer");
+        try {
+            Path first = directory.resolve("first.txt");
+            Path second = directory.resolve("second.txt");
+            Io.spit(first, "Line 0\nLine 1\n");
+            Io.spit(second, "Line \u2013 2\n");
+
+            Path copy = directory.resolve("copy.txt");
+            Io.copy(first, copy);
+            assertThat(Io.slurp(copy), is("Line 0\nLine 1"));
+
+            Io.copy(second, copy, "append?", true);
+            assertThat(Io.slurp(copy), is("Line 0\nLine 1\nLine \u2013 2"));
+
+            Path bundle = directory.resolve("bundle.txt");
+            Io.concat(bundle, second, first, second);
+            assertThat(Io.slurp(bundle), is("Line \u2013 2\nLine 0\nLine 1\nLine \u2013 2"));
+
+            Path parts = Files.createDirectory(directory.resolve("parts"));
+            List<Path> split = Io.split(bundle, 5, parts);
+            assertThat(split.size(), is((int) (Files.size(bundle) + 4) / 5));
+            assertThat(split.get(1).getFileName().toString(), is("bundle.txt.1"));
+
+            Path joined = directory.resolve("joined.txt");
+            Io.concatAll(joined, split);
+            assertThat(Io.slurp(joined), is(Io.slurp(bundle)));
+
+            Io.concatAll(joined, Collections.singletonList(first), "append?", true);
+            assertThat(Io.slurp(joined), is(Io.slurp(bundle) + "\nLine 0\nLine 1"));
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            assertThat(Io.transfer(bundle, output), is(Files.size(bundle)));
+
+            Path transferred = directory.resolve("transferred.txt");
+            Io.transfer(new ByteArrayInputStream(output.toByteArray()), transferred);
+            assertThat(Io.slurp(transferred), is(Io.slurp(bundle)));
+
+            try {
+                Io.copy(first, first);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                assertThat(Io.slurp(first), is("Line 0\nLine 1"));
+            }
+
+            try {
+                Io.concatAll(copy, asList(first, directory.resolve(".").resolve("copy.txt")), "append?", true);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                assertThat(Io.slurp(copy), is("Line 0\nLine 1\nLine \u2013 2"));
+            }
+        } finally {
+            Io.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void shouldAppendTransfersAcrossChunks() throws Exception {
+        Path path = Files.createTempFile("transfer", ".txt");
+        long chunkSize = Io.transferChunkSize;
+        Io.transferChunkSize = 7;
+        try {
+            Io.spit(path, "head");
+
+            byte[] bytes = new byte[100];
+            Arrays.fill(bytes, (byte) 'x');
+            assertThat(Io.transfer(new ByteArrayInputStream(bytes), path, "append?", true), is(100L));
+            assertThat(Files.size(path), is(104L));
+
+            assertThat(Io.transfer(new ByteArrayInputStream(bytes), path), is(100L));
+            assertThat(Files.size(path), is(100L));
+        } finally {
+            Io.transferChunkSize = chunkSize;
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldAllowToWalkPathsInParallel() throws Exception {
+        Path directory = Files.createTempDirectory("walk").toRealPath();
+        try {
+            for (int index = 0; index < 3; index++) {
+                Path subdirectory = Files.createDirectories(directory.resolve(String.format("d%d/nested", index)));
+                Io.spit(subdirectory.resolve(String.format("%d.log", index)), "log");
+                Io.spit(subdirectory.resolve(String.format("%d.txt", index)), "txt");
+            }
+
+            assertThat(Io.walkPaths(directory, Io.PathFiltering.byName("*.log"), Io.PathOrdering.byPathNumerically()),
+                    is(Io.findPathsRecursively(directory, Io.PathFiltering.byName("*.log"),
+                            Io.PathOrdering.byPathNumerically())));
+            assertThat(Io.walkPaths(directory, Io.PathFiltering.directories(), Io.PathOrdering.byPathLexicographically(),
+                    "depth", 1, "parallelism", 2),
+                    is(Io.findPaths(directory, Io.PathFiltering.directories(),
+                            Io.PathOrdering.byPathLexicographically())));
+
+            try (Io.PathWalk walk = Io.walkPaths(directory, Io.PathFiltering.files())) {
+                assertThat(Ordering.sort(Io.PathOrdering.byPathNumerically(), walk),
+                        is(Io.findPathsRecursively(directory, Io.PathFiltering.files(),
+                                Io.PathOrdering.byPathNumerically())));
+                assertThat(Iterables.toList(Iterables.take(2, walk)).size(), is(2));
+            }
+        } finally {
+            Io.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void shouldSkipEntriesThatFailWhileWalking() throws Exception {
+        final Path directory = Files.createTempDirectory("walk").toRealPath();
+        try {
+            Predicate<Path> removingVictims = new Predicate<Path>() {
+                @Override
+                public Boolean $(Path path) {
+                    if (path.getFileName().toString().equals("victim")) {
+                        Io.deleteDirectory(path);
+                    }
+
+                    return true;
+                }
+            };
+
+            Io.spit(Files.createDirectories(directory.resolve("kept")).resolve("0.txt"), "txt");
+            Files.createDirectories(directory.resolve("victim/nested"));
+
+            List<IOException> failures = new ArrayList<>();
+            assertThat(Io.walkPaths(directory, removingVictims, Io.PathOrdering.byPathLexicographically(),
+                    "parallelism", 1, "failures", failures),
+                    is(asList(directory.resolve("kept"), directory.resolve("kept/0.txt"), directory.resolve("victim"))));
+            assertThat(failures.size(), is(1));
+            assertThat(failures.get(0) instanceof NoSuchFileException, is(true));
+
+            Files.createDirectories(directory.resolve("victim/nested"));
+            try {
+                Io.walkPaths(directory, removingVictims, Io.PathOrdering.byPathLexicographically(),
+                        "parallelism", 1, "errors", "fail-fast");
+                fail();
+            } catch (RuntimeException expected) {
+                Throwable cause = expected;
+                while (cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+
+                assertThat(cause instanceof NoSuchFileException, is(true));
+            }
+        } finally {
+            Io.deleteDirectory(directory);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldNotWalkFarAheadOfTheConsumer() throws Exception {
+        Path directory = Files.createTempDirectory("walk").toRealPath();
+        try {
+            for (int index = 0; index < 100; index++) {
+                Io.spit(directory.resolve(String.format("%d.txt", index)), "txt");
+            }
+
+            final AtomicInteger visited = new AtomicInteger();
+            Predicate<Path> counting = new Predicate<Path>() {
+                @Override
+                public Boolean $(Path path) {
+                    visited.incrementAndGet();
+                    return true;
+                }
+            };
+
+            Io.PathWalk walk = Io.walkPaths(directory, counting, "parallelism", 1, "queue-capacity", 2);
+            try {
+                Iterator<Path> it = walk.iterator();
+                it.next();
+                Thread.sleep(300);
+
+                assertThat(visited.get() <= 4, is(true));
+
+                walk.close();
+                int rest = 0;
+                for (; it.hasNext(); it.next()) {
+                    rest++;
+                }
+                assertThat(rest <= 3, is(true));
+            } finally {
+                walk.close();
+            }
+        } finally {
+            Io.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void shouldAllowToDeleteDirectoryInParallel() throws Exception {
+        Path directory = Files.createTempDirectory("delete");
+        for (int index = 0; index < 4; index++) {
+            Path subdirectory = Files.createDirectories(directory.resolve(String.format("d%d/nested", index)));
+            Io.spit(subdirectory.resolve(String.format("%d.txt", index)), "0123456789");
+        }
+
+        Io.Deletion deletion = Io.deleteDirectoryInParallel(directory, "parallelism", 2, "errors", "collect");
+
+        assertThat(Files.exists(directory), is(false));
+        assertThat(deletion.files(), is(4L));
+        assertThat(deletion.directories(), is(9L));
+        assertThat(deletion.bytes(), is(40L));
+        assertThat(deletion.errors().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldMatchPathsLikeDefaultFileSystemMatchers() throws Exception {
+        List<String> globs = asList("*.log", "**.log", "*.{log,txt}", "[a-c]*", "[!a-c]?.log", "file\\*", "**/d1/*");
+        List<Path> paths = asList(Paths.get("a.log"), Paths.get("d.log"), Paths.get("b.txt"), Paths.get("file*"),
+                Paths.get("/var/d1/c.log"), Paths.get("/var/d1/nested/x.txt"), Paths.get("d1/x.(log)"));
+
+        for (String glob : globs) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            for (Path path : paths) {
+                assertThat(glob + " ~ " + path, Io.PathFiltering.byPath(glob).$(path), is(matcher.matches(path)));
+                assertThat(glob + " ~ " + path, Io.PathFiltering.byName(glob).$(path),
+                        is(matcher.matches(path.getFileName())));
+            }
+        }
+    }
+
+    @Test
+    public void shouldAllowToCombinePathPredicates() throws Exception {
+        Predicate<Path> combined = Io.PathFiltering.or(
+                Io.PathFiltering.byName("*.log"), Io.PathFiltering.byName("*.txt"), Io.PathFiltering.byRegex(".*/tmp/.*"));
+        Predicate<Path> plain = Predicates.or(
+                Io.PathFiltering.byName("*.log"), Io.PathFiltering.byName("*.txt"), Io.PathFiltering.byRegex(".*/tmp/.*"));
+
+        for (Path path : asList(Paths.get("/var/a.log"), Paths.get("/var/a.txt"), Paths.get("/tmp/a.bin"),
+                Paths.get("/var/a.bin"))) {
+            assertThat(path.toString(), combined.$(path), is(plain.$(path)));
+        }
+
+        Predicate<Path> backreferences = Io.PathFiltering.or(
+                Io.PathFiltering.byRegex("(a)\\1.*"), Io.PathFiltering.byRegex("(b)\\1.*"));
+        assertThat(backreferences.$(Paths.get("aa")), is(true));
+        assertThat(backreferences.$(Paths.get("bb")), is(true));
+        assertThat(backreferences.$(Paths.get("ab")), is(false));
+
+        Predicate<Path> both = Io.PathFiltering.and(Io.PathFiltering.byName("*.log"), Io.PathFiltering.byPath("/var/**"));
+        assertThat(both.$(Paths.get("/var/a.log")), is(true));
+        assertThat(both.$(Paths.get("/tmp/a.log")), is(false));
+        assertThat(both.$(Paths.get("/var/a.txt")), is(false));
+    }
+
     @Test
     public void shouldAllowToExtractFilenameExtension() throws Exception {
         assertThat(Io.filenameExtension(null), is(""));
@@ -317,4 +702,52 @@ public class IoTest {
 //                "/path/to/directory/10.foo",
 //                "/path/to/directory0/1.foo");
     }
-}
\ No newline at end of file
+
+    private static List<Path> naturallyOrderedSamples() {
+        List<Path> result = new LinkedList<>();
+        for (String path : asList("", "/", "0.foo", "1.foo", "10.foo", "2.foo", "x.foo", "007.foo", "7.foo", "a07", "a7",
+                "/path/to/directory", "/path/to/directory/x.foo", "/path/to/directory1/x.foo",
+                "/path/to/directory2/x.foo", "/path/to/directory10/x.foo", "/path/to/d1rect0ry/x.foo",
+                "/path/to/directory/10.foo", "/path/to/directory0/1.foo", "path/to/directory0/1.foo",
+                "log.2024-01-10.1", "log.2024-01-10.12", "log.2024-1-10.2", "log.2024-01-9.3", "abc", "ab", "34",
+                "a99999999999999999999999", "a100000000000000000000000")) {
+            result.add(Paths.get(path));
+        }
+
+        return result;
+    }
+
+    @Test
+    public void shouldComparePathsNaturallyLikeNumerically() throws Exception {
+        List<Path> paths = naturallyOrderedSamples();
+        for (Path path : paths) {
+            for (Path other : paths) {
+                assertCompared(core.Ordering.op(Io.PathOrdering.byPathNumerically().compare(path, other)),
+                        Io.PathOrdering.byPathNaturally(), path, other);
+            }
+        }
+    }
+
+    @Test
+    public void shouldSortPathsOnPrecomputedKeysLikeTheirComparators() throws Exception {
+        List<Path> paths = naturallyOrderedSamples();
+
+        Random random = new Random(42);
+        for (int index = 0; index < 500; index++) {
+            StringBuilder path = new StringBuilder();
+            for (int length = random.nextInt(12); 0 < length; length--) {
+                path.append("ab-_.0019/".charAt(random.nextInt(10)));
+            }
+
+            paths.add(Paths.get(path.toString()));
+        }
+
+        Collections.shuffle(paths, random);
+        assertThat(Io.PathOrdering.sortNaturally(paths),
+                is(core.Ordering.sort(Io.PathOrdering.byPathNumerically(), paths)));
+        assertThat(Io.PathOrdering.sort(Io.PathOrdering.byPathNumerically(), paths),
+                is(core.Ordering.sort(Io.PathOrdering.byPathNumerically(), paths)));
+        assertThat(Io.PathOrdering.sort(Io.PathOrdering.byPathLexicographically(), paths),
+                is(core.Ordering.sort(Io.PathOrdering.byPathLexicographically(), paths)));
+    }
+}
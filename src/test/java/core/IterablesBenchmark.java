@@ -0,0 +1,96 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rough throughput of drop/filter/walk/take/mapString chains, run manually: java core.IterablesBenchmark [elements]
+ */
+public final class IterablesBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private static final Predicate<Integer> EVEN = new Predicate<Integer>() {
+        @Override
+        public Boolean $(Integer x) {
+            return x % 2 == 0;
+        }
+    };
+
+    private static final Walking.Inner<Integer, Integer> HALVE = new Walking.Inner<Integer, Integer>() {
+        @Override
+        public Integer invoke(Integer x) {
+            return x / 2;
+        }
+    };
+
+    /**
+     * @return processed units per second
+     */
+    private static double measure(long units, Callable<?> operation) throws Exception {
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+            operation.call();
+        }
+
+        long elapsed = 0;
+        for (int iteration = 0; iteration < MEASURED_ITERATIONS; iteration++) {
+            Map.Entry<Long, ?> result = Timing.time(TimeUnit.NANOSECONDS, operation);
+            elapsed += result.getKey();
+        }
+
+        return units * MEASURED_ITERATIONS / (elapsed / 1e9);
+    }
+
+    private static void chains(final List<Integer> source) throws Exception {
+        final int drop = 10;
+        final int take = source.size() / 4;
+
+        System.out.printf("nested iterators : %8.1f M elements/s%n", measure(source.size(), new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return Walking.walk(HALVE, new Walking.Outer<Integer, List<String>>() {
+                    @Override
+                    public List<String> invoke(Iterable<Integer> iterable) {
+                        return Iterables.toList(Strings.mapString(iterable));
+                    }
+                }, Iterables.take(take, Filtering.filter(EVEN, Iterables.drop(drop, source))));
+            }
+        }) / 1e6);
+
+        System.out.printf("fused pipeline   : %8.1f M elements/s%n", measure(source.size(), new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return Pipeline.of(source).drop(drop).filter(EVEN).take(take).walk(HALVE).mapString().toList();
+            }
+        }) / 1e6);
+
+        System.out.printf("hand-written loop: %8.1f M elements/s%n", measure(source.size(), new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                List<String> result = new ArrayList<>();
+                for (int index = drop; index < source.size() && result.size() < take; index++) {
+                    Integer x = source.get(index);
+                    if (EVEN.$(x)) {
+                        result.add(String.valueOf(HALVE.invoke(x)));
+                    }
+                }
+
+                return result;
+            }
+        }) / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length == 0 ? 1000000 : Integer.parseInt(args[0]);
+
+        List<Integer> source = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            source.add(index);
+        }
+
+        chains(source);
+    }
+}
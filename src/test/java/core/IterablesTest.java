@@ -3,8 +3,13 @@ package core;
 import org.junit.Test;
 
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
@@ -174,4 +179,151 @@ public class IterablesTest {
         assertThat(Iterables.toList(Iterables.take(7, Iterables.cycle(asList(0, 1, 2)))), is(asList(0, 1, 2, 0, 1, 2, 0)));
         assertThat(Iterables.toList(Iterables.take(7, Iterables.cycle(asList(0, 1, 2, 3)))), is(asList(0, 1, 2, 3, 0, 1, 2)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldSliceSizedSources() throws Exception {
+        Splittable<Integer> range = (Splittable<Integer>) Ranges.rangeOf(int.class, 10, 0, 3);
+        assertThat(range.size(), is(4L));
+        assertThat(Iterables.toList(range.slice(1, 3)), is(asList(7, 4)));
+        assertThat(((Splittable<Long>) Ranges.rangeOf(long.class)).size(), is(Long.MAX_VALUE));
+
+        Splittable<Integer> array = (Splittable<Integer>) Iterables.asIterable(0, 1, 2, 3, 4);
+        assertThat(Iterables.toList(array.slice(2, 5)), is(asList(2, 3, 4)));
+
+        Splittable<Integer> taken = (Splittable<Integer>) Iterables.take(3, Ranges.rangeOf(int.class));
+        assertThat(taken.size(), is(3L));
+        assertThat(Iterables.toList(taken), is(asList(0, 1, 2)));
+        assertThat(((Splittable<Integer>) Iterables.take(-1, array)).size(), is(0L));
+
+        Splittable<Integer> concatenated = (Splittable<Integer>) Iterables.concat(
+                Iterables.asIterable(0, 1), Ranges.rangeOf(int.class, 2, 5), Iterables.<Integer>asIterable(), array);
+        assertThat(concatenated.size(), is(10L));
+        assertThat(Iterables.toList(concatenated), is(asList(0, 1, 2, 3, 4, 0, 1, 2, 3, 4)));
+        assertThat(Iterables.toList(concatenated.slice(1, 7)), is(asList(1, 2, 3, 4, 0, 1)));
+        assertThat(Iterables.toList(concatenated.slice(3, 4)), is(asList(3)));
+    }
+
+    private static final Iterables.Reducer<Long> SUM = new Iterables.Reducer<Long>() {
+        @Override
+        public Long invoke(Long accumulated, Long x) {
+            return accumulated + x;
+        }
+    };
+
+    @Test
+    public void shouldProcessSizedSourcesInParallel() throws Exception {
+        Iterable<Long> range = Ranges.rangeOf(long.class, 1L, 100001L);
+        for (int parallelism = 1; parallelism <= 4; parallelism++) {
+            assertThat(Iterables.reduceInParallel(range, 0L, SUM, "parallelism", parallelism), is(5000050000L));
+
+            List<Long> list = Iterables.toListInParallel(
+                    Iterables.concat(Iterables.take(50000, range), Ranges.rangeOf(long.class, 0L, 3L)),
+                    "parallelism", parallelism);
+            assertThat(list.size(), is(50003));
+            assertThat(list.subList(49998, 50003), is(asList(49999L, 50000L, 0L, 1L, 2L)));
+
+            final AtomicLong sum = new AtomicLong();
+            Iterables.forEachInParallel(new LinkedList<>(Iterables.toList(range)), new Function<Long, Void>() {
+                @Override
+                public Void $(Long x) {
+                    sum.addAndGet(x);
+                    return null;
+                }
+            }, "parallelism", parallelism);
+            assertThat(sum.get(), is(5000050000L));
+        }
+
+        assertThat(Iterables.toListInParallel(null), is(Collections.emptyList()));
+        assertThat(Iterables.reduceInParallel(Collections.<Long>emptyList(), 0L, SUM), is(0L));
+    }
+
+    private static <X> Iterable<X> once(final Iterable<X> iterable) {
+        return new Iterable<X>() {
+            private boolean iterated;
+
+            @Override
+            public Iterator<X> iterator() {
+                if (iterated) {
+                    throw new IllegalStateException("Already iterated");
+                }
+
+                iterated = true;
+                return iterable.iterator();
+            }
+        };
+    }
+
+    @Test
+    public void shouldDropAndTakeLastElementsInOnePass() throws Exception {
+        List<Integer> numbers = Iterables.toListInParallel(Ranges.rangeOf(int.class, 100));
+
+        assertThat(Iterables.toList(Iterables.dropLast(3, once(numbers))), is(numbers.subList(0, 97)));
+        assertThat(Iterables.toList(Iterables.takeLast(40, once(numbers))), is(numbers.subList(60, 100)));
+        assertThat(Iterables.toList(Iterables.dropLast(Integer.MAX_VALUE, once(numbers))), is(Collections.<Integer>emptyList()));
+        assertThat(Iterables.toList(Iterables.takeLast(Integer.MAX_VALUE, once(numbers))), is(numbers));
+
+        assertThat(Iterables.toList(Iterables.dropLast(1, asList(0, null, 2))), is(asList(0, null)));
+        assertThat(Iterables.toList(Iterables.takeLast(2, asList(0, null, 2))), is(asList(null, 2)));
+    }
+
+    private static <X> Iterable<X>[] toArray(List<Iterable<X>> iterables) {
+        @SuppressWarnings("unchecked") Iterable<X>[] result = (Iterable<X>[]) new Iterable<?>[iterables.size()];
+        return iterables.toArray(result);
+    }
+
+    @Test
+    public void shouldConcatenateManyPartsFlat() throws Exception {
+        Iterable<Integer> consed = Collections.emptyList();
+        Iterable<Integer> conjed = null;
+        List<Iterable<Integer>> shards = new ArrayList<>();
+        for (int index = 0; index < 10000; index++) {
+            consed = Iterables.cons(9999 - index, consed);
+            conjed = Iterables.conj(conjed, index);
+            shards.add(new LinkedList<>(asList(index)));
+        }
+
+        Iterable<Integer>[] rest = toArray(shards.subList(1, shards.size()));
+        List<Integer> expected = Iterables.toList(Ranges.rangeOf(int.class, 10000));
+        assertThat(Iterables.toList(consed), is(expected));
+        assertThat(Iterables.toList(conjed), is(expected));
+        assertThat(Iterables.toList(Iterables.concat(shards.get(0), rest)), is(expected));
+
+        Iterable<Integer> base = Iterables.concat(new LinkedList<>(asList(0)), new LinkedList<>(asList(1)));
+        Iterable<Integer> left = Iterables.conj(base, 2);
+        Iterable<Integer> right = Iterables.conj(base, 3);
+        assertThat(Iterables.toList(base), is(asList(0, 1)));
+        assertThat(Iterables.toList(left), is(asList(0, 1, 2)));
+        assertThat(Iterables.toList(right), is(asList(0, 1, 3)));
+        assertThat(Iterables.toList(Iterables.conj(left, 4)), is(asList(0, 1, 2, 4)));
+
+        assertThat(Iterables.toList(Iterables.cons(null, Iterables.conj(asList(0, 1), null))), is(asList(0, 1)));
+        assertThat(Iterables.toList(Iterables.concat(Iterables.cons(0, null), Iterables.conj(null, 1))), is(asList(0, 1)));
+    }
+
+    @Test(timeout = 5000)
+    public void shouldConsAndConjInConstantAmortizedTime() throws Exception {
+        Iterable<Integer> consed = null;
+        Iterable<Integer> conjed = Collections.emptyList();
+        for (int index = 0; index < 100000; index++) {
+            consed = Iterables.cons(99999 - index, consed);
+            conjed = Iterables.conj(conjed, index);
+        }
+
+        List<Integer> expected = Iterables.toList(Ranges.rangeOf(int.class, 100000));
+        assertThat(Iterables.toList(consed), is(expected));
+        assertThat(Iterables.toList(conjed), is(expected));
+
+        Splittable<Integer> sized = (Splittable<Integer>) consed;
+        assertThat(sized.size(), is(100000L));
+        assertThat(Iterables.toList(sized.slice(49998, 50003)), is(asList(49998, 49999, 50000, 50001, 50002)));
+        assertThat(Iterables.toList(sized.slice(7, 7)), is(Collections.<Integer>emptyList()));
+        assertThat(Iterables.toListInParallel(consed, "parallelism", 4), is(expected));
+
+        Iterable<Integer> left = Iterables.cons(-1, consed);
+        Iterable<Integer> right = Iterables.cons(-2, consed);
+        assertThat(Iterables.first(left), is(-1));
+        assertThat(Iterables.first(right), is(-2));
+        assertThat(Iterables.first(consed), is(0));
+        assertThat(Iterables.toList(Iterables.conj(sized.slice(1, 3), 3)), is(asList(1, 2, 3)));
+    }
+}
@@ -0,0 +1,139 @@
+package core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PipelineTest {
+    private static final Predicate<Integer> EVEN = new Predicate<Integer>() {
+        @Override
+        public Boolean $(Integer x) {
+            return x % 2 == 0;
+        }
+    };
+
+    private static final Walking.Inner<Integer, Integer> SQUARE = new Walking.Inner<Integer, Integer>() {
+        @Override
+        public Integer invoke(Integer x) {
+            return x * x;
+        }
+    };
+
+    private static final Walking.Outer<String, List<String>> TO_LIST = new Walking.Outer<String, List<String>>() {
+        @Override
+        public List<String> invoke(Iterable<String> iterable) {
+            return Iterables.toList(iterable);
+        }
+    };
+
+    private static List<Integer> numbers(int count) {
+        List<Integer> result = new ArrayList<>();
+        for (int index = 0; index < count; index++) {
+            result.add(index);
+        }
+
+        return result;
+    }
+
+    @Test
+    public void shouldMatchNestedStages() throws Exception {
+        for (Iterable<Integer> source : asList(numbers(100), Ranges.rangeOf(Integer.class, 100))) {
+            for (int drop = 0; drop < 5; drop++) {
+                for (int take = -1; take < 60; take += 7) {
+                    List<String> nested = Walking.walk(SQUARE, new Walking.Outer<Integer, List<String>>() {
+                        @Override
+                        public List<String> invoke(Iterable<Integer> iterable) {
+                            return Iterables.toList(Strings.mapString(iterable));
+                        }
+                    }, Iterables.take(take, Filtering.filter(EVEN, Iterables.drop(drop, source))));
+
+                    Pipeline<String> pipeline = Pipeline.of(source).drop(drop).filter(EVEN).take(take).walk(SQUARE).mapString();
+
+                    assertThat(pipeline.toList(), is(nested));
+                    assertThat(Iterables.toList(pipeline), is(nested));
+                    assertThat(pipeline.into(TO_LIST), is(nested));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldStopPullingTheSourceOnceTakeIsSatisfied() throws Exception {
+        final int[] pulled = new int[1];
+        Iterable<Integer> source = new Iterable<Integer>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>() {
+                    @Override
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    @Override
+                    public Integer next() {
+                        return pulled[0]++;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        assertThat(Pipeline.of(source).filter(EVEN).take(3).toList(), is(asList(0, 2, 4)));
+        assertThat(pulled[0], is(5));
+
+        pulled[0] = 0;
+        assertThat(Iterables.toList(Pipeline.of(source).take(2)), is(asList(0, 1)));
+        assertThat(pulled[0], is(2));
+
+        pulled[0] = 0;
+        assertThat(Pipeline.of(source).take(0).toList(), is(Collections.<Integer>emptyList()));
+        assertThat(pulled[0], is(0));
+    }
+
+    @Test
+    public void shouldRestartStatefulStagesOnEveryTraversal() throws Exception {
+        Pipeline<Integer> pipeline = Pipeline.of(1, 2, 3, 4, 5).drop(1).take(2);
+
+        assertThat(pipeline.toList(), is(asList(2, 3)));
+        assertThat(pipeline.toList(), is(asList(2, 3)));
+        assertThat(Iterables.toList(pipeline), is(asList(2, 3)));
+
+        final List<Integer> seen = new ArrayList<>();
+        pipeline.forEach(new Function<Integer, Void>() {
+            @Override
+            public Void $(Integer x) {
+                seen.add(x);
+                return null;
+            }
+        });
+        assertThat(seen, is(asList(2, 3)));
+
+        Iterator<Integer> it = pipeline.iterator();
+        assertThat(it.next(), is(2));
+        assertThat(it.next(), is(3));
+        assertThat(it.hasNext(), is(false));
+        try {
+            it.next();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void shouldTreatNullSourceAsEmpty() throws Exception {
+        assertThat(Pipeline.of((Iterable<Integer>) null).mapString().toList(), is(Collections.<String>emptyList()));
+    }
+}
@@ -3,10 +3,12 @@ package core;
 import org.junit.Test;
 
 import java.util.Collections;
+import java.util.NoSuchElementException;
 
 import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class RangesTest {
     @Test
@@ -59,4 +61,76 @@ public class RangesTest {
         assertThat(Iterables.toList(Ranges.rangeOf(long.class, 0L, 10L, 1L)),
                 is(asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L)));
     }
+
+    @Test
+    public void shouldTraverseIntRangesWithoutBoxing() throws Exception {
+        Ranges.IntRange range = Ranges.intRange(10, 0, 3);
+        assertThat(Iterables.toList(range), is(asList(10, 7, 4, 1)));
+
+        Ranges.IntIterator it = range.intIterator();
+        final StringBuilder traversed = new StringBuilder();
+        while (it.hasNext()) {
+            traversed.append(it.nextInt()).append(' ');
+        }
+        range.forEachInt(new Ranges.IntProcedure() {
+            @Override
+            public void invoke(int x) {
+                traversed.append(x).append(' ');
+            }
+        });
+        assertThat(traversed.toString(), is("10 7 4 1 10 7 4 1 "));
+
+        assertThat(range.sum(), is(22L));
+        assertThat(range.min(), is(1));
+        assertThat(range.max(), is(10));
+        assertThat(range.slice(1, 3).sum(), is(11L));
+        assertThat(Ranges.intRange(0).sum(), is(0L));
+        assertThat(Ranges.intRange(Integer.MIN_VALUE, Integer.MAX_VALUE).sum(), is(2L * Integer.MIN_VALUE + 1));
+        assertThat(Ranges.intRange(Integer.MAX_VALUE).max(), is(Integer.MAX_VALUE - 1));
+
+        try {
+            Ranges.intRange(5, 5).min();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+
+        try {
+            Ranges.intRange(0, 10, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void shouldTraverseLongRangesWithoutBoxing() throws Exception {
+        Ranges.LongRange range = Ranges.longRange(-5L, 6L, 2L);
+        assertThat(Iterables.toList(range), is(asList(-5L, -3L, -1L, 1L, 3L, 5L)));
+
+        Ranges.LongIterator it = range.longIterator();
+        long sum = 0;
+        while (it.hasNext()) {
+            sum += it.nextLong();
+        }
+        final long[] forEachSum = new long[1];
+        range.forEachLong(new Ranges.LongProcedure() {
+            @Override
+            public void invoke(long x) {
+                forEachSum[0] += x;
+            }
+        });
+        assertThat(sum, is(0L));
+        assertThat(forEachSum[0], is(0L));
+
+        assertThat(range.sum(), is(0L));
+        assertThat(range.min(), is(-5L));
+        assertThat(range.max(), is(5L));
+        assertThat(Ranges.longRange(1L, 1000001L).sum(), is(500000500000L));
+        assertThat(Ranges.longRange(10L, 0L).size(), is(0L));
+
+        long wrapped = 0;
+        for (long x = Long.MAX_VALUE - 10; x < Long.MAX_VALUE; x++) {
+            wrapped += x;
+        }
+        assertThat(Ranges.longRange(Long.MAX_VALUE - 10, Long.MAX_VALUE).sum(), is(wrapped));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,603 @@
+package core;
+
+import org.junit.Test;
+
+import javax.management.ObjectName;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class WatchingTest {
+    private static Map.Entry<String, Map.Entry<Path, Path>> event(String type, Path directory, String name) {
+        return new AbstractMap.SimpleImmutableEntry<String, Map.Entry<Path, Path>>(type,
+                new AbstractMap.SimpleImmutableEntry<>(directory, Paths.get(name)));
+    }
+
+    private static Set<Map.Entry<String, Map.Entry<Path, Path>>> awaitEvents(
+            Iterator<Map.Entry<String, Map.Entry<Path, Path>>> events,
+            Set<Map.Entry<String, Map.Entry<Path, Path>>> expected) {
+        Set<Map.Entry<String, Map.Entry<Path, Path>>> result = new HashSet<>();
+        while (!result.containsAll(expected)) {
+            result.add(events.next());
+        }
+
+        return result;
+    }
+
+    private static void close(Object iterator) throws IOException {
+        if (iterator instanceof Closeable) {
+            ((Closeable) iterator).close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldWatchDirectoriesRecursively() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        Iterator<Map.Entry<String, Map.Entry<Path, Path>>> events = null;
+        try {
+            Path nested = Files.createDirectories(root.resolve("a").resolve("b"));
+
+            events = Watching.watchDirectories(
+                    asList("create"), asList(root), "recursive?", true, "parallelism", 2).iterator();
+
+            Files.createFile(nested.resolve("existing.txt"));
+            awaitEvents(events, new HashSet<>(asList(event("create", nested, "existing.txt"))));
+
+            Path created = root.resolve("c");
+            Files.createDirectories(created.resolve("d"));
+            Files.createFile(created.resolve("d").resolve("raced.txt"));
+            awaitEvents(events, new HashSet<>(asList(
+                    event("create", root, "c"),
+                    event("create", created, "d"),
+                    event("create", created.resolve("d"), "raced.txt"))));
+
+            Files.createFile(created.resolve("d").resolve("later.txt"));
+            awaitEvents(events, new HashSet<>(asList(event("create", created.resolve("d"), "later.txt"))));
+        } finally {
+            close(events);
+            Io.deleteDirectory(root);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldInvalidateCreatedDirectoriesThatCannotBeWatched() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        Iterator<Map.Entry<String, Map.Entry<Path, Path>>> events = null;
+        Watching.failingRegistrations = new Predicate<Path>() {
+            @Override
+            public Boolean $(Path path) {
+                return path.getFileName().toString().equals("locked");
+            }
+        };
+        try {
+            events = Watching.watchDirectories(asList("delete"), asList(root), "recursive?", true).iterator();
+
+            Path locked = Files.createDirectories(root.resolve("a").resolve("locked"));
+            awaitEvents(events, new HashSet<>(asList(event("invalidate", locked, ""))));
+
+            Files.createFile(root.resolve("a").resolve("deleted.txt"));
+            Files.delete(root.resolve("a").resolve("deleted.txt"));
+            awaitEvents(events, new HashSet<>(asList(event("delete", root.resolve("a"), "deleted.txt"))));
+        } finally {
+            Watching.failingRegistrations = null;
+            close(events);
+            Io.deleteDirectory(root);
+        }
+    }
+
+    private static final class Recording implements Watching.Callback {
+        private final List<Map.Entry<String, Map.Entry<Path, Path>>> events =
+                Collections.synchronizedList(new ArrayList<Map.Entry<String, Map.Entry<Path, Path>>>());
+
+        @Override
+        public Void $(Map.Entry<String, Map.Entry<Path, Path>> event) {
+            events.add(event);
+            return null;
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldCoalesceEventsPerPath() throws Exception {
+        Path directory = Paths.get("watched");
+        Recording recording = new Recording();
+
+        Watching.Coalescing coalescing = Watching.coalescing(recording, 60000);
+        for (Map.Entry<String, Map.Entry<Path, Path>> event : asList(
+                event("create", directory, "a"), event("modify", directory, "a"), event("delete", directory, "a"),
+                event("create", directory, "b"), event("modify", directory, "b"), event("modify", directory, "b"),
+                event("modify", directory, "c"), event("delete", directory, "c"),
+                event("delete", directory, "d"), event("create", directory, "d"))) {
+            coalescing.$(event);
+        }
+
+        assertThat(recording.events.isEmpty(), is(true));
+        coalescing.close();
+        assertThat(recording.events, is(asList(
+                event("create", directory, "b"), event("delete", directory, "c"), event("modify", directory, "d"))));
+    }
+
+    @Test(timeout = 30000)
+    public void shouldDeliverCoalescedEventsAfterQuietPeriod() throws Exception {
+        Path directory = Paths.get("watched");
+        Recording recording = new Recording();
+
+        try (Watching.Coalescing coalescing = Watching.coalescing(recording, 50)) {
+            coalescing.$(event("modify", directory, "a"));
+            coalescing.$(event("modify", directory, "a"));
+            coalescing.$(event("create", directory, "b"));
+            coalescing.$(event("invalidate", directory, ""));
+
+            while (recording.events.size() < 3) {
+                Thread.sleep(10);
+            }
+
+            assertThat(recording.events, is(asList(
+                    event("modify", directory, "a"), event("create", directory, "b"),
+                    event("invalidate", directory, ""))));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldDispatchEventsInOrderPerPath() throws Exception {
+        Path directory = Paths.get("watched");
+        Recording recording = new Recording();
+
+        List<Map.Entry<String, Map.Entry<Path, Path>>> events = new ArrayList<>();
+        for (int index = 0; index < 1000; index++) {
+            events.add(event(index % 3 == 0 ? "create" : "modify", directory, String.valueOf(index % 7)));
+        }
+
+        Watching.Dispatching dispatching = Watching.dispatching(recording, "parallelism", 4, "queue-capacity", 8);
+        try {
+            for (Map.Entry<String, Map.Entry<Path, Path>> event : events) {
+                dispatching.$(event);
+            }
+        } finally {
+            dispatching.close();
+        }
+
+        assertThat(dispatching.dispatched(), is(1000L));
+        assertThat(dispatching.dropped(), is(0L));
+
+        for (int name = 0; name < 7; name++) {
+            List<Map.Entry<String, Map.Entry<Path, Path>>> expected = new ArrayList<>();
+            for (Map.Entry<String, Map.Entry<Path, Path>> event : events) {
+                if (event.getValue().getValue().equals(Paths.get(String.valueOf(name)))) {
+                    expected.add(event);
+                }
+            }
+
+            List<Map.Entry<String, Map.Entry<Path, Path>>> actual = new ArrayList<>();
+            for (Map.Entry<String, Map.Entry<Path, Path>> event : recording.events) {
+                if (event.getValue().getValue().equals(Paths.get(String.valueOf(name)))) {
+                    actual.add(event);
+                }
+            }
+
+            assertThat(actual, is(expected));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldCountDroppedEventsWhenDispatchOverflows() throws Exception {
+        final Object gate = new Object();
+        final boolean[] open = {false};
+        Watching.Callback blocked = new Watching.Callback() {
+            @Override
+            public Void $(Map.Entry<String, Map.Entry<Path, Path>> event) {
+                synchronized (gate) {
+                    while (!open[0]) {
+                        try {
+                            gate.wait();
+                        } catch (InterruptedException exception) {
+                            throw new RuntimeException(exception);
+                        }
+                    }
+                }
+
+                return null;
+            }
+        };
+
+        Watching.Dispatching dispatching = Watching.dispatching(blocked,
+                "parallelism", 1, "queue-capacity", 2, "overflow", "drop");
+        for (int index = 0; index < 10; index++) {
+            dispatching.$(event("modify", Paths.get("watched"), "a"));
+        }
+
+        synchronized (gate) {
+            open[0] = true;
+            gate.notifyAll();
+        }
+        dispatching.close();
+
+        assertThat(dispatching.dispatched() + dispatching.dropped(), is(10L));
+        assertThat(dispatching.dispatched() <= 3, is(true));
+    }
+
+    private static Set<Path> awaitNames(Iterator<Map.Entry<String, Map.Entry<Path, Path>>> events, String type,
+                                        int count) {
+        Set<Path> result = new HashSet<>();
+        while (result.size() < count) {
+            Map.Entry<String, Map.Entry<Path, Path>> event = events.next();
+
+            assertThat(event.getKey().equals("invalidate"), is(false));
+            if (event.getKey().equals(type)) {
+                result.add(event.getValue().getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * A watch key overflows once more events pile up than it buffers (512 in the JDK), so creating thousands of
+     * files while nobody polls and giving the file system time to deliver them makes the key overflow; the metrics
+     * prove that it did, and that the events came from the rescan.
+     */
+    @Test(timeout = 60000)
+    public void shouldRecoverFromOverflowByRescanning() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        Watching.Metrics metrics = Watching.metrics();
+        Iterator<Map.Entry<String, Map.Entry<Path, Path>>> events = null;
+        try {
+            events = Watching.watchDirectories(asList(root), "recover-overflow?", true, "listener", metrics).iterator();
+
+            Set<Path> names = new HashSet<>();
+            for (int index = 0; index < 2000; index++) {
+                names.add(Files.createFile(root.resolve(String.format("%d.txt", index))).getFileName());
+            }
+
+            Thread.sleep(500);
+            assertThat(awaitNames(events, "create", names.size()), is(names));
+            assertThat(metrics.getOverflows() > 0, is(true));
+
+            long overflows = metrics.getOverflows();
+            for (Path name : names) {
+                Files.delete(root.resolve(name));
+            }
+
+            Thread.sleep(500);
+            assertThat(awaitNames(events, "delete", names.size()), is(names));
+            assertThat(metrics.getOverflows() > overflows, is(true));
+        } finally {
+            close(events);
+            Io.deleteDirectory(root);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldWatchDirectoriesInBatches() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        Iterator<Watching.Batch> batches = null;
+        try {
+            batches = Watching.watchDirectoriesInBatches(
+                    asList("create"), asList(root)).iterator();
+
+            Set<Path> names = new HashSet<>();
+            for (int index = 0; index < 100; index++) {
+                names.add(Files.createFile(root.resolve(String.format("%d.txt", index))).getFileName());
+            }
+
+            Set<Path> seen = new HashSet<>();
+            Watching.Batch previous = null;
+            while (seen.size() < names.size()) {
+                assertThat(batches.hasNext(), is(true));
+                Watching.Batch batch = batches.next();
+
+                assertThat(batch.isEmpty(), is(false));
+                if (previous != null) {
+                    assertThat(batch == previous, is(true));
+                }
+                previous = batch;
+
+                for (int index = 0; index < batch.size(); index++) {
+                    assertThat(batch.type(index), is("create"));
+                    assertThat(batch.directory(index), is(root));
+                    assertThat(batch.path(index), is(root.resolve(batch.name(index))));
+                    assertThat(batch.get(index), is(event("create", root, batch.name(index).toString())));
+
+                    seen.add(batch.name(index));
+                }
+            }
+
+            assertThat(seen, is(names));
+        } finally {
+            close(batches);
+            Io.deleteDirectory(root);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldPollDirectoriesWithoutNativeEvents() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        Iterator<Map.Entry<String, Map.Entry<Path, Path>>> events = null;
+        try {
+            Path nested = Files.createDirectories(root.resolve("a"));
+            Path existing = Files.createFile(nested.resolve("existing.txt"));
+
+            events = Watching.watchDirectories(asList(root), "recursive?", true, "poll-interval", 20L).iterator();
+
+            Files.write(existing, "changed".getBytes("UTF-8"));
+            Path created = Files.createDirectories(root.resolve("b").resolve("c"));
+            Files.createFile(created.resolve("new.txt"));
+            awaitEvents(events, new HashSet<>(asList(
+                    event("modify", nested, "existing.txt"),
+                    event("create", root, "b"),
+                    event("create", root.resolve("b"), "c"),
+                    event("create", created, "new.txt"))));
+
+            Io.deleteDirectory(nested);
+            awaitEvents(events, new HashSet<>(asList(
+                    event("delete", nested, "existing.txt"),
+                    event("delete", root, "a"))));
+        } finally {
+            close(events);
+            Io.deleteDirectory(root);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldPollAndCloseWatches() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        try {
+            final Watching.Watch watch = Watching.openWatch(asList("create"), asList(root));
+            assertThat(watch.isOpen(), is(true));
+            assertThat(watch.poll(10, TimeUnit.MILLISECONDS).isEmpty(), is(true));
+
+            Files.createFile(root.resolve("a.txt"));
+            Watching.Batch batch = watch.take();
+            assertThat(batch.get(0), is(event("create", root, "a.txt")));
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException ignore) {
+                        /*NOP*/
+                    }
+
+                    watch.close();
+                }
+            }).start();
+
+            assertThat(watch.take() == null, is(true));
+            assertThat(watch.isOpen(), is(false));
+            assertThat(watch.iterator().hasNext(), is(false));
+        } finally {
+            Io.deleteDirectory(root);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldSelectAcrossWatches() throws Exception {
+        Path first = Files.createTempDirectory("watch");
+        Path second = Files.createTempDirectory("watch");
+        try (Watching.Selector selector = Watching.selector()) {
+            Watching.Watch creations = selector.open(asList("create"), asList(first, second));
+            Watching.Watch deletions = selector.open(asList("delete"), asList(first));
+
+            Files.createFile(first.resolve("a.txt"));
+            Files.createFile(second.resolve("b.txt"));
+            Files.delete(first.resolve("a.txt"));
+
+            Set<Map.Entry<String, Map.Entry<Path, Path>>> created = new HashSet<>();
+            Set<Map.Entry<String, Map.Entry<Path, Path>>> deleted = new HashSet<>();
+            while (created.size() < 2 || deleted.size() < 1) {
+                for (Watching.Watch watch : selector.poll(1, TimeUnit.SECONDS)) {
+                    for (Map.Entry<String, Map.Entry<Path, Path>> event : watch.batch()) {
+                        (watch == creations ? created : deleted).add(event);
+                    }
+                }
+            }
+
+            assertThat(created, is((Set<Map.Entry<String, Map.Entry<Path, Path>>>) new HashSet<>(asList(
+                    event("create", first, "a.txt"), event("create", second, "b.txt")))));
+            assertThat(deleted, is((Set<Map.Entry<String, Map.Entry<Path, Path>>>) new HashSet<>(asList(
+                    event("delete", first, "a.txt")))));
+
+            deletions.close();
+            assertThat(deletions.isOpen(), is(false));
+            assertThat(creations.isOpen(), is(true));
+
+            Files.createFile(first.resolve("c.txt"));
+            List<Watching.Watch> selected = selector.poll(5, TimeUnit.SECONDS);
+            assertThat(selected, is(asList(creations)));
+            assertThat(creations.batch().get(0), is(event("create", first, "c.txt")));
+        } finally {
+            Io.deleteDirectory(first);
+            Io.deleteDirectory(second);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldShareOneWatchServiceAcrossSubscriptions() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        try {
+            Watching.Watch first = Watching.openWatch(asList("create"), asList(root), "shared?", true);
+            Watching.Watch second = Watching.openWatch(asList(root), "shared?", true);
+
+            Files.createFile(root.resolve("a.txt"));
+            assertThat(first.take().get(0), is(event("create", root, "a.txt")));
+            assertThat(second.take().get(0), is(event("create", root, "a.txt")));
+
+            first.close();
+            assertThat(first.take() == null, is(true));
+
+            Files.delete(root.resolve("a.txt"));
+            assertThat(second.take().get(0), is(event("delete", root, "a.txt")));
+            second.close();
+        } finally {
+            Io.deleteDirectory(root);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldInvalidateInsteadOfQueueingBeyondTheSubscriptionCapacity() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        try {
+            Watching.Watch watch = Watching.openWatch(asList("create"), asList(root), "shared?", true,
+                    "queue-capacity", 1);
+            try {
+                for (String name : asList("a.txt", "b.txt", "c.txt")) {
+                    Files.createFile(root.resolve(name));
+                    Thread.sleep(500);
+                }
+
+                assertThat(watch.take().get(0), is(event("create", root, "a.txt")));
+
+                Watching.Batch events = watch.take();
+                assertThat(events.get(events.size() - 1), is(event("invalidate", root, "")));
+            } finally {
+                watch.close();
+            }
+        } finally {
+            Io.deleteDirectory(root);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldMeasureWatches() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        ObjectName name = new ObjectName("core:type=Watching,name=\"test\"");
+        Watching.Metrics metrics = Watching.metrics().register("test");
+        try {
+            assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), is(true));
+
+            Watching.Watch watch = Watching.openWatch(asList(root), "listener", metrics);
+            try {
+                Files.createFile(root.resolve("a.txt"));
+                Files.createFile(root.resolve("b.txt"));
+                while (metrics.getCreateEvents() < 2) {
+                    watch.take();
+                }
+            } finally {
+                watch.close();
+            }
+
+            assertThat(metrics.getCreateEventsPerSecond() > 0, is(true));
+            assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "CreateEvents"), is((Object) 2L));
+        } finally {
+            metrics.close();
+            Io.deleteDirectory(root);
+        }
+
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), is(false));
+    }
+
+    @Test
+    public void shouldComputeCallbackPercentiles() throws Exception {
+        Watching.Metrics metrics = Watching.metrics();
+        for (long latency = 1; latency <= 100; latency++) {
+            metrics.callbackCompleted(latency, latency * 2);
+        }
+
+        assertThat(metrics.getCallbacks(), is(100L));
+        assertThat(metrics.callbackLatency(50), is(50L));
+        assertThat(metrics.callbackLatency(99), is(99L));
+        assertThat(metrics.lag(100), is(200L));
+    }
+
+    private static Set<Map.Entry<String, Map.Entry<Path, Path>>> events(Watching.Batch batch) {
+        Set<Map.Entry<String, Map.Entry<Path, Path>>> result = new HashSet<>();
+        for (Map.Entry<String, Map.Entry<Path, Path>> event : batch) {
+            result.add(event);
+        }
+
+        return result;
+    }
+
+    @Test(timeout = 30000)
+    public void shouldReportOfflineChangesFromCheckpoint() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        Path checkpoint = Files.createTempFile("watch", ".checkpoint");
+        Files.delete(checkpoint);
+        try {
+            Path nested = Files.createDirectories(root.resolve("a"));
+            Files.write(root.resolve("modified.txt"), "0".getBytes("UTF-8"));
+            Files.write(root.resolve("touched.txt"), "0".getBytes("UTF-8"));
+            Files.createFile(nested.resolve("deleted.txt"));
+
+            Object[] options = {"recursive?", true, "checkpoint", checkpoint, "checkpoint-hash?", true};
+            Watching.Watch watch = Watching.openWatch(asList(root), options);
+            assertThat(watch.poll(10, TimeUnit.MILLISECONDS).isEmpty(), is(true));
+            watch.close();
+
+            Files.write(root.resolve("modified.txt"), "01".getBytes("UTF-8"));
+            Files.setLastModifiedTime(root.resolve("touched.txt"), FileTime.fromMillis(0));
+            Files.delete(nested.resolve("deleted.txt"));
+            Files.createFile(root.resolve("created.txt"));
+            Files.createFile(Files.createDirectories(root.resolve("b")).resolve("created.txt"));
+
+            watch = Watching.openWatch(asList(root), options);
+            assertThat(events(watch.take()), is((Set<Map.Entry<String, Map.Entry<Path, Path>>>) new HashSet<>(asList(
+                    event("modify", root, "modified.txt"),
+                    event("delete", nested, "deleted.txt"),
+                    event("create", root, "created.txt"),
+                    event("create", root, "b"),
+                    event("create", root.resolve("b"), "created.txt")))));
+
+            Files.createFile(root.resolve("live.txt"));
+            awaitEvents(watch.iterator(), new HashSet<>(asList(event("create", root, "live.txt"))));
+            watch.close();
+
+            watch = Watching.openWatch(asList(root), options);
+            assertThat(watch.poll(10, TimeUnit.MILLISECONDS).isEmpty(), is(true));
+            watch.close();
+        } finally {
+            Files.deleteIfExists(checkpoint);
+            Io.deleteDirectory(root);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldRoundTripControlCharactersThroughTheCheckpoint() throws Exception {
+        Path root = Files.createTempDirectory("watch");
+        Path checkpoint = Files.createTempFile("watch", ".checkpoint");
+        Files.delete(checkpoint);
+        try {
+            Files.createFile(root.resolve("a\tb"));
+            Files.createFile(root.resolve("c\rd"));
+            Files.createFile(root.resolve("e\nf\\g"));
+
+            Object[] options = {"checkpoint", checkpoint};
+            Watching.Watch watch = Watching.openWatch(asList(root), options);
+            watch.close();
+
+            watch = Watching.openWatch(asList(root), options);
+            assertThat(watch.poll(10, TimeUnit.MILLISECONDS).isEmpty(), is(true));
+            watch.close();
+
+            Files.delete(root.resolve("a\tb"));
+            Files.delete(root.resolve("c\rd"));
+
+            watch = Watching.openWatch(asList(root), options);
+            assertThat(events(watch.take()), is((Set<Map.Entry<String, Map.Entry<Path, Path>>>) new HashSet<>(asList(
+                    event("delete", root, "a\tb"),
+                    event("delete", root, "c\rd")))));
+            watch.close();
+        } finally {
+            Files.deleteIfExists(checkpoint);
+            Io.deleteDirectory(root);
+        }
+    }
+}